@@ -0,0 +1,272 @@
+/*
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.simumetadata.async;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+import org.w3c.dom.Document;
+
+import de.decoit.simumetadata.CredentialType;
+import de.decoit.simumetadata.LoginFailureReason;
+import de.decoit.simumetadata.SimuLink;
+import de.decoit.simumetadata.SimuMetaDataFactories;
+import de.decoit.simumetadata.SimuMetaDataFactory;
+import de.hshannover.f4.trust.ifmapj.identifier.Identifier;
+
+/**
+ * Non-blocking facade over a {@link SimuMetaDataFactory}. Every call is run
+ * on an {@link Executor} and returns a {@link CompletableFuture} of the
+ * result. Failures, including the {@code MarshalException} of the identifier
+ * methods, complete the future exceptionally. The parameterless links are
+ * created with {@link #createLink(SimuLink)}.
+ * <p>
+ * The factory is safe for concurrent use and takes no monitor locks, so
+ * virtual threads running its calls are never pinned to their carrier
+ * thread. {@link #defaultExecutor()} starts one virtual thread per call when
+ * the runtime supports them.
+ *
+ * @author DECOIT GmbH
+ *
+ */
+public class AsyncSimuMetaDataFactory {
+
+	private final SimuMetaDataFactory mFactory;
+	private final Executor mExecutor;
+
+	/**
+	 * Constructor running the calls on {@link #defaultExecutor()}
+	 *
+	 * @param factory
+	 *            factory doing the work
+	 */
+	public AsyncSimuMetaDataFactory(SimuMetaDataFactory factory) {
+		this(factory, defaultExecutor());
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param factory
+	 *            factory doing the work
+	 * @param executor
+	 *            executor running the calls
+	 */
+	public AsyncSimuMetaDataFactory(SimuMetaDataFactory factory,
+			Executor executor) {
+		if (factory == null || executor == null) {
+			throw new NullPointerException(
+					"factory and executor must not be null");
+		}
+		mFactory = factory;
+		mExecutor = executor;
+	}
+
+	/**
+	 * Executor starting a virtual thread per task on Java 21 and later,
+	 * {@link ForkJoinPool#commonPool()} on older runtimes
+	 *
+	 * @return shared default executor
+	 */
+	public static Executor defaultExecutor() {
+		return DefaultExecutor.INSTANCE;
+	}
+
+	/**
+	 * @return factory doing the work
+	 */
+	public SimuMetaDataFactory getFactory() {
+		return mFactory;
+	}
+
+	/**
+	 * @return executor running the calls
+	 */
+	public Executor getExecutor() {
+		return mExecutor;
+	}
+
+	/**
+	 * @see SimuLink#createDocument(SimuMetaDataFactory)
+	 */
+	public CompletableFuture<Document> createLink(SimuLink link) {
+		return supply(() -> link.createDocument(mFactory));
+	}
+
+	/**
+	 * @see SimuMetaDataFactory#createLoginFailure(CredentialType,
+	 *      LoginFailureReason)
+	 */
+	public CompletableFuture<Document> createLoginFailure(
+			CredentialType type, LoginFailureReason reason) {
+		return supply(() -> mFactory.createLoginFailure(type, reason));
+	}
+
+	/**
+	 * @see SimuMetaDataFactory#createLoginFailure(CredentialType,
+	 *      LoginFailureReason, String, String)
+	 */
+	public CompletableFuture<Document> createLoginFailure(
+			CredentialType type, LoginFailureReason reason, String typeDef,
+			String reasonDef) {
+		return supply(() -> mFactory.createLoginFailure(type, reason,
+				typeDef, reasonDef));
+	}
+
+	/**
+	 * @see SimuMetaDataFactory#createLoginSuccess(CredentialType)
+	 */
+	public CompletableFuture<Document> createLoginSuccess(CredentialType type) {
+		return supply(() -> mFactory.createLoginSuccess(type));
+	}
+
+	/**
+	 * @see SimuMetaDataFactory#createLoginSuccess(CredentialType, String)
+	 */
+	public CompletableFuture<Document> createLoginSuccess(
+			CredentialType type, String typeDef) {
+		return supply(() -> mFactory.createLoginSuccess(type, typeDef));
+	}
+
+	/**
+	 * @see SimuMetaDataFactory#createAttackDetected(String, String, float)
+	 */
+	public CompletableFuture<Document> createAttackDetected(String type,
+			String id, float severity) {
+		return supply(() -> mFactory.createAttackDetected(type, id, severity));
+	}
+
+	/**
+	 * @see SimuMetaDataFactory#createFileChanged(String, String, String)
+	 */
+	public CompletableFuture<Document> createFileChanged(String kind,
+			String time, String importance) {
+		return supply(() -> mFactory.createFileChanged(kind, time, importance));
+	}
+
+	/**
+	 * @see SimuMetaDataFactories#createFileChanged(SimuMetaDataFactory,
+	 *      String[], String[], String[])
+	 */
+	public CompletableFuture<List<Document>> createFileChanged(
+			String[] kinds, String[] times, String[] importances) {
+		return supply(() -> SimuMetaDataFactories.createFileChanged(
+				mFactory, kinds, times, importances));
+	}
+
+	/**
+	 * @see SimuMetaDataFactory#createVulnerability(String, String, float)
+	 */
+	public CompletableFuture<Identifier> createVulnerability(String type,
+			String id, float severity) {
+		return supply(() -> mFactory.createVulnerability(type, id, severity));
+	}
+
+	/**
+	 * @see SimuMetaDataFactory#createVulnerability(String, String)
+	 */
+	public CompletableFuture<Identifier> createVulnerability(String type,
+			String id) {
+		return supply(() -> mFactory.createVulnerability(type, id));
+	}
+
+	/**
+	 * @see SimuMetaDataFactories#createVulnerabilities(SimuMetaDataFactory,
+	 *      String[], String[], float[])
+	 */
+	public CompletableFuture<List<Identifier>> createVulnerabilities(
+			String[] types, String[] ids, float[] severities) {
+		return supply(() -> SimuMetaDataFactories
+				.createVulnerabilities(mFactory, types, ids, severities));
+	}
+
+	/**
+	 * @see SimuMetaDataFactory#createImplementation(String, String, String,
+	 *      String)
+	 */
+	public CompletableFuture<Identifier> createImplementation(String name,
+			String version, String localVersion, String platform) {
+		return supply(() -> mFactory.createImplementation(name, version,
+				localVersion, platform));
+	}
+
+	/**
+	 * @see SimuMetaDataFactory#createImplementation(String, String)
+	 */
+	public CompletableFuture<Identifier> createImplementation(String name,
+			String version) {
+		return supply(() -> mFactory.createImplementation(name, version));
+	}
+
+	/**
+	 * @see SimuMetaDataFactory#createService(String, String, int, String)
+	 */
+	public CompletableFuture<Identifier> createService(String type,
+			String name, int port, String ad) {
+		return supply(() -> mFactory.createService(type, name, port, ad));
+	}
+
+	/**
+	 * @see SimuMetaDataFactory#createFileIdentifier(String, String)
+	 */
+	public CompletableFuture<Identifier> createFileIdentifier(String path,
+			String ad) {
+		return supply(() -> mFactory.createFileIdentifier(path, ad));
+	}
+
+	private <T> CompletableFuture<T> supply(Callable<T> call) {
+		CompletableFuture<T> future = new CompletableFuture<>();
+		Runnable task = () -> {
+			try {
+				future.complete(call.call());
+			} catch (Throwable e) {
+				future.completeExceptionally(e);
+			}
+		};
+		try {
+			mExecutor.execute(task);
+		} catch (RuntimeException e) {
+			// rejected or shut down executor
+			future.completeExceptionally(e);
+		}
+		return future;
+	}
+
+	/**
+	 * Lazily resolved default executor. Executors.newVirtualThreadPerTaskExecutor
+	 * is looked up reflectively, this module is compiled for Java 8.
+	 */
+	private static final class DefaultExecutor {
+
+		static final Executor INSTANCE = create();
+
+		private static Executor create() {
+			try {
+				Method m = Executors.class
+						.getMethod("newVirtualThreadPerTaskExecutor");
+				return (Executor) m.invoke(null);
+			} catch (ReflectiveOperationException e) {
+				return ForkJoinPool.commonPool();
+			}
+		}
+	}
+}
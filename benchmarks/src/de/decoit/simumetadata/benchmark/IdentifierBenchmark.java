@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.simumetadata.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import de.decoit.simumetadata.SimuMetaDataFactory;
+import de.decoit.simumetadata.SimuMetadataFactoryImpl;
+import de.hshannover.f4.trust.ifmapj.exception.MarshalException;
+import de.hshannover.f4.trust.ifmapj.identifier.Identifier;
+import de.hshannover.f4.trust.ifmapj.identifier.Identifiers;
+
+/**
+ * Single threaded benchmark of every identifier create method and of the
+ * plain ifmapj extended identifier round trip they replace
+ *
+ * @author DECOIT GmbH
+ *
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(1)
+@State(Scope.Benchmark)
+public class IdentifierBenchmark {
+
+	private SimuMetadataFactoryImpl mFactory;
+
+	/**
+	 * Builder for the round trip benchmark, one per thread
+	 */
+	@State(Scope.Thread)
+	public static class Builder {
+		private DocumentBuilder mDocumentBuilder;
+
+		@Setup
+		public void setup() throws ParserConfigurationException {
+			DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
+			dbf.setNamespaceAware(true);
+			mDocumentBuilder = dbf.newDocumentBuilder();
+		}
+	}
+
+	@Setup
+	public void setup() throws ParserConfigurationException {
+		mFactory = new SimuMetadataFactoryImpl();
+	}
+
+	@Benchmark
+	public Identifier createVulnerability() throws MarshalException {
+		return mFactory.createVulnerability("CVE", "CVE-2014-0160", 7.5f);
+	}
+
+	@Benchmark
+	public Identifier createVulnerabilityWithoutSeverity()
+			throws MarshalException {
+		return mFactory.createVulnerability("CVE", "CVE-2014-0160");
+	}
+
+	@Benchmark
+	public Identifier createImplementation() throws MarshalException {
+		return mFactory.createImplementation("openssl", "1.0.1f", "1.0.1f-1",
+				"linux");
+	}
+
+	@Benchmark
+	public Identifier createImplementationShort() throws MarshalException {
+		return mFactory.createImplementation("openssl", "1.0.1f");
+	}
+
+	@Benchmark
+	public Identifier createService() throws MarshalException {
+		return mFactory.createService("https", "www.example.com", 443,
+				"example");
+	}
+
+	@Benchmark
+	public Identifier createFileIdentifier() throws MarshalException {
+		return mFactory.createFileIdentifier("/etc/passwd", "example");
+	}
+
+	@Benchmark
+	public Identifier extendedIdentityRoundTrip(Builder builder)
+			throws MarshalException {
+		Document doc = builder.mDocumentBuilder.newDocument();
+		Element e = doc.createElementNS(
+				SimuMetaDataFactory.SIMU_IDENTIFIER_URI,
+				SimuMetaDataFactory.SIMU_METADATA_PREFIX + ":vulnerability");
+		e.setAttribute("type", "CVE");
+		e.setAttribute("id", "CVE-2014-0160");
+		doc.appendChild(e);
+		return Identifiers.createExtendedIdentity(doc);
+	}
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.simumetadata.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+
+import de.decoit.simumetadata.CredentialType;
+import de.decoit.simumetadata.LoginFailureReason;
+import de.decoit.simumetadata.SimuLink;
+import de.decoit.simumetadata.SimuMetadataFactoryImpl;
+
+/**
+ * Single threaded benchmark of every metadata create method. All threads
+ * share one factory, like the publishers of a sensor do.
+ *
+ * @author DECOIT GmbH
+ *
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(1)
+@State(Scope.Benchmark)
+public class MetadataBenchmark {
+
+	private SimuMetadataFactoryImpl mFactory;
+
+	@Setup
+	public void setup() throws ParserConfigurationException {
+		mFactory = new SimuMetadataFactoryImpl();
+	}
+
+	@Benchmark
+	public Document createIdentifiesAs() {
+		return mFactory.createIdentifiesAs();
+	}
+
+	@Benchmark
+	public Document createLoginFailure() {
+		return mFactory.createLoginFailure(CredentialType.PASSWORD,
+				LoginFailureReason.INVALID_CREDENTIALS);
+	}
+
+	@Benchmark
+	public Document createLoginFailureOther() {
+		return mFactory.createLoginFailure(CredentialType.OTHER,
+				LoginFailureReason.OTHER, "smartcard", "locked");
+	}
+
+	@Benchmark
+	public Document createLoginSuccess() {
+		return mFactory.createLoginSuccess(CredentialType.PUBLIC_KEY);
+	}
+
+	@Benchmark
+	public Document createLoginSuccessOther() {
+		return mFactory.createLoginSuccess(CredentialType.OTHER, "smartcard");
+	}
+
+	@Benchmark
+	public Document createServiceIP() {
+		return mFactory.createServiceIP();
+	}
+
+	@Benchmark
+	public Document createServiceDiscoveredBy() {
+		return mFactory.createServiceDiscoveredBy();
+	}
+
+	@Benchmark
+	public Document createDeviceDiscoveredBy() {
+		return mFactory.createDeviceDiscoveredBy();
+	}
+
+	@Benchmark
+	public Document createAttackDetected() {
+		return mFactory.createAttackDetected("CVE", "CVE-2014-0160", 7.5f);
+	}
+
+	@Benchmark
+	public Document createImplementationVulnerability() {
+		return mFactory.createImplementationVulnerability();
+	}
+
+	@Benchmark
+	public Document createServiceImplementation() {
+		return mFactory.createServiceImplementation();
+	}
+
+	@Benchmark
+	public Document createFileMonitored() {
+		return mFactory.createFileMonitored();
+	}
+
+	@Benchmark
+	public Document createFileChanged() {
+		return mFactory.createFileChanged("modified", "2015-06-01T12:00:00Z",
+				"high");
+	}
+
+	@Benchmark
+	public Document createLink() {
+		return mFactory.createLink(SimuLink.SERVICE_DISCOVERED_BY);
+	}
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.simumetadata.benchmark;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+
+import de.decoit.simumetadata.SimuMetadataFactoryImpl;
+import de.decoit.simumetadata.SimuMetadataWriter;
+import de.hshannover.f4.trust.ifmapj.exception.MarshalException;
+import de.hshannover.f4.trust.ifmapj.identifier.Identifier;
+
+/**
+ * Benchmark of the paths formatting a severity or a port: attack-detected
+ * metadata written directly and built as a document, and the vulnerability
+ * and service identifiers. The severity is a whole tenth or an arbitrary
+ * float; run with -prof gc to see the allocation per operation.
+ *
+ * @author DECOIT GmbH
+ *
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(1)
+@State(Scope.Thread)
+public class NumberFormattingBenchmark {
+
+	@Param({ "7.5", "7.3333" })
+	public float mSeverity;
+
+	private SimuMetadataFactoryImpl mFactory;
+	private ByteBuffer mBuffer;
+
+	@Setup
+	public void setup() throws ParserConfigurationException {
+		mFactory = new SimuMetadataFactoryImpl();
+		mBuffer = ByteBuffer.allocate(512);
+	}
+
+	@Benchmark
+	public int writerAttackDetected() throws IOException {
+		mBuffer.clear();
+		new SimuMetadataWriter(mBuffer).writeAttackDetected("CVE",
+				"CVE-2014-0160", mSeverity);
+		return mBuffer.position();
+	}
+
+	@Benchmark
+	public Document createAttackDetected() {
+		return mFactory.createAttackDetected("CVE", "CVE-2014-0160", mSeverity);
+	}
+
+	@Benchmark
+	public Identifier createVulnerability() throws MarshalException {
+		return mFactory.createVulnerability("CVE", "CVE-2014-0160", mSeverity);
+	}
+
+	@Benchmark
+	public Identifier createService() throws MarshalException {
+		return mFactory.createService("https", "www.example.com", 443,
+				"example");
+	}
+}
@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.simumetadata.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.decoit.simumetadata.LocalMapServer;
+import de.decoit.simumetadata.SimuMetadataFactoryImpl;
+import de.decoit.simumetadata.SimuPublisher;
+import de.hshannover.f4.trust.ifmapj.exception.IfmapErrorResult;
+import de.hshannover.f4.trust.ifmapj.exception.IfmapException;
+import de.hshannover.f4.trust.ifmapj.identifier.Identifier;
+import de.hshannover.f4.trust.ifmapj.identifier.Identifiers;
+import de.hshannover.f4.trust.ifmapj.messages.Requests;
+
+/**
+ * Benchmark of publishing attack-detected metadata to a
+ * {@link LocalMapServer} with a simulated round trip time: one synchronous
+ * request per metadatum against the batching {@link SimuPublisher}. One
+ * operation is one metadatum.
+ *
+ * @author DECOIT GmbH
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(1)
+@State(Scope.Benchmark)
+public class PublishBenchmark {
+
+	@Param({ "0", "1000" })
+	public int mLatencyMicros;
+
+	private SimuMetadataFactoryImpl mFactory;
+	private Identifier mDevice;
+	private LocalMapServer mServer;
+	private SimuPublisher mPublisher;
+
+	@Setup(Level.Trial)
+	public void setup() throws ParserConfigurationException,
+			IfmapErrorResult, IfmapException {
+		mFactory = new SimuMetadataFactoryImpl();
+		mDevice = Identifiers.createDev("sensor");
+		mServer = new LocalMapServer();
+		mServer.setLatency(mLatencyMicros, TimeUnit.MICROSECONDS);
+		mServer.newSession();
+		mPublisher = new SimuPublisher(mServer);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		mPublisher.close();
+	}
+
+	@Benchmark
+	public void synchronousPublish() throws IfmapErrorResult, IfmapException {
+		mServer.publish(Requests.createPublishReq(Requests.createPublishUpdate(
+				mDevice, mFactory.createAttackDetected("CVE", "CVE-2014-0160",
+						7.5f))));
+	}
+
+	@Benchmark
+	public void batchedPublish() throws InterruptedException {
+		mPublisher.publishUpdate(mDevice, mFactory.createAttackDetected("CVE",
+				"CVE-2014-0160", 7.5f));
+	}
+}
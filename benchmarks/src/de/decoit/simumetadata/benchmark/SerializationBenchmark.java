@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.simumetadata.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.w3c.dom.Document;
+
+import de.decoit.simumetadata.CredentialType;
+import de.decoit.simumetadata.LoginFailureReason;
+import de.decoit.simumetadata.SimuMetadataFactoryImpl;
+import de.decoit.simumetadata.SimuMetadataWriter;
+import de.decoit.simumetadata.SimuXmlSerializer;
+
+/**
+ * Benchmark of the serialization paths for an attack-detected and a
+ * login-failure metadatum: the Transformer based implementation getXMLString
+ * used originally, getXMLString itself, the stream serializer and the
+ * DOM-free writer
+ *
+ * @author DECOIT GmbH
+ *
+ */
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(1)
+@State(Scope.Thread)
+public class SerializationBenchmark {
+
+	private SimuMetadataFactoryImpl mFactory;
+	private Document mAttackDetected;
+	private Document mLoginFailure;
+	private ByteArrayOutputStream mStream;
+	private StringBuilder mStringBuilder;
+
+	@Setup
+	public void setup() throws ParserConfigurationException {
+		mFactory = new SimuMetadataFactoryImpl();
+		mAttackDetected = mFactory.createAttackDetected("CVE",
+				"CVE-2014-0160", 7.5f);
+		mLoginFailure = mFactory.createLoginFailure(CredentialType.PASSWORD,
+				LoginFailureReason.INVALID_CREDENTIALS);
+		mStream = new ByteArrayOutputStream(512);
+		mStringBuilder = new StringBuilder(512);
+	}
+
+	@Benchmark
+	public String transformerAttackDetected() throws TransformerException {
+		Transformer transformer = TransformerFactory.newInstance()
+				.newTransformer();
+		transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+		StringWriter writer = new StringWriter();
+		transformer.transform(new DOMSource(mAttackDetected),
+				new StreamResult(writer));
+		return writer.getBuffer().toString().replaceAll("\n|\r", "");
+	}
+
+	@Benchmark
+	public String getXMLStringAttackDetected() {
+		return mFactory.getXMLString(mAttackDetected);
+	}
+
+	@Benchmark
+	public String getXMLStringLoginFailure() {
+		return mFactory.getXMLString(mLoginFailure);
+	}
+
+	@Benchmark
+	public int serializeToStreamAttackDetected() throws IOException {
+		mStream.reset();
+		SimuXmlSerializer.serialize(mAttackDetected, mStream);
+		return mStream.size();
+	}
+
+	@Benchmark
+	public int writerAttackDetected() throws IOException {
+		mStringBuilder.setLength(0);
+		new SimuMetadataWriter(mStringBuilder).writeAttackDetected("CVE",
+				"CVE-2014-0160", 7.5f);
+		return mStringBuilder.length();
+	}
+
+	@Benchmark
+	public int writerLoginFailure() throws IOException {
+		mStringBuilder.setLength(0);
+		new SimuMetadataWriter(mStringBuilder).writeLoginFailure(
+				CredentialType.PASSWORD, LoginFailureReason.INVALID_CREDENTIALS);
+		return mStringBuilder.length();
+	}
+
+	@Benchmark
+	public String createAndSerializeAttackDetected() {
+		return mFactory.getXMLString(mFactory.createAttackDetected("CVE",
+				"CVE-2014-0160", 7.5f));
+	}
+}
@@ -16,6 +16,8 @@
  */
 package de.decoit.simumetadata;
 
+import java.nio.ByteBuffer;
+
 /**
  * Enum for Credential Types
  * @author Leonid Schwenke, DECOIT GmbH
@@ -25,7 +27,8 @@ public enum CredentialType {
 	PASSWORD("Password"), PUBLIC_KEY("Public-Key"), BIOMETRIC("Biometric"), TOKEN(
 			"Token"), OTHER("Other");
 
-	public String name;
+	public final String name;
+	private final byte[] mUtf8;
 
 	/**
 	 * Constructor
@@ -33,6 +36,7 @@ public enum CredentialType {
 	 */
 	private CredentialType(String name) {
 		this.name = name;
+		this.mUtf8 = name.getBytes(XmlFragment.UTF8);
 	}
 
 	/**
@@ -41,4 +45,26 @@ public enum CredentialType {
 	public String toString() {
 		return name;
 	};
+
+	/**
+	 * UTF-8 encoded name, computed once
+	 * @return read-only view of the encoded name
+	 */
+	public ByteBuffer getUtf8() {
+		return ByteBuffer.wrap(mUtf8).asReadOnlyBuffer();
+	}
+
+	/**
+	 * Looking up a constant by its name as used in the metadata
+	 * @param name Credential Type as returned by toString()
+	 * @return matching constant or null
+	 */
+	public static CredentialType forName(String name) {
+		for (CredentialType c : values()) {
+			if (c.name.equals(name)) {
+				return c;
+			}
+		}
+		return null;
+	}
 }
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.simumetadata;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+
+/**
+ * Striped pool of namespace aware {@link DocumentBuilder} instances.
+ * {@link DocumentBuilder} is not thread-safe, so every caller borrows an
+ * exclusive instance for the duration of a call. Threads are mapped onto
+ * slots by their id, so concurrent callers rarely touch the same slot and no
+ * global lock is taken on the hot path.
+ *
+ * @author DECOIT GmbH
+ *
+ */
+final class DocumentBuilderPool {
+
+	private final DocumentBuilderFactory mFactory;
+	private final ReentrantLock mFactoryLock = new ReentrantLock();
+	private final AtomicReferenceArray<DocumentBuilder> mSlots;
+	private final int mMask;
+
+	/**
+	 * Constructor
+	 *
+	 * @throws ParserConfigurationException
+	 *             if no namespace aware builder can be created
+	 */
+	DocumentBuilderPool() throws ParserConfigurationException {
+		mFactory = DocumentBuilderFactory.newInstance();
+		mFactory.setNamespaceAware(true);
+
+		int stripes = stripes();
+		mSlots = new AtomicReferenceArray<DocumentBuilder>(stripes);
+		mMask = stripes - 1;
+
+		// fail early on a broken parser configuration
+		mSlots.set(0, mFactory.newDocumentBuilder());
+	}
+
+	/**
+	 * Borrow a builder. The builder must be handed back with
+	 * {@link #release(DocumentBuilder)} and must not be used afterwards.
+	 *
+	 * @return exclusive {@link DocumentBuilder}
+	 */
+	DocumentBuilder acquire() {
+		int home = stripe();
+		for (int i = 0; i < 2; i++) {
+			DocumentBuilder builder = mSlots.getAndSet((home + i) & mMask,
+					null);
+			if (builder != null) {
+				return builder;
+			}
+		}
+		return newDocumentBuilder();
+	}
+
+	/**
+	 * Hand a builder back to the pool. If the slot of the calling thread is
+	 * occupied the builder is dropped.
+	 *
+	 * @param builder
+	 *            builder obtained from {@link #acquire()}
+	 */
+	void release(DocumentBuilder builder) {
+		builder.reset();
+		mSlots.compareAndSet(stripe(), null, builder);
+	}
+
+	private int stripe() {
+		return stripe(mMask);
+	}
+
+	/**
+	 * @return number of stripes for this machine, a power of two of at least
+	 *         twice the number of processors
+	 */
+	static int stripes() {
+		return Integer.highestOneBit(Runtime.getRuntime()
+				.availableProcessors() * 2 - 1) << 1;
+	}
+
+	/**
+	 * Mapping the calling thread onto a stripe
+	 *
+	 * @param mask
+	 *            number of stripes minus one
+	 * @return stripe of the calling thread
+	 */
+	static int stripe(int mask) {
+		long id = Thread.currentThread().getId();
+		return (int) (id ^ (id >>> 32)) * 0x9E3779B9 >>> 16 & mask;
+	}
+
+	private DocumentBuilder newDocumentBuilder() {
+		// DocumentBuilderFactory is not thread-safe either
+		mFactoryLock.lock();
+		try {
+			return mFactory.newDocumentBuilder();
+		} catch (ParserConfigurationException e) {
+			throw new IllegalStateException(e);
+		} finally {
+			mFactoryLock.unlock();
+		}
+	}
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.simumetadata;
+
+import static de.decoit.simumetadata.SimuMetaDataFactory.SIMU_METADATA_PREFIX;
+import static de.decoit.simumetadata.SimuMetaDataFactory.SIMU_METADATA_URI;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import javax.xml.parsers.DocumentBuilder;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.Text;
+
+/**
+ * Pool of reusable metadata documents for the elements described by
+ * {@link SimuElement}. Every document is a skeleton holding the root element
+ * and one field element with its text node per field. Taking a document from
+ * the pool only sets the text values and re-attaches the fields present, no
+ * node is allocated.
+ *
+ * Like {@link DocumentBuilderPool}, released documents are kept in slots
+ * striped by thread id, a bounded number per element type and stripe. A
+ * document that finds no free slot is left to the garbage collector.
+ *
+ * @author DECOIT GmbH
+ *
+ */
+final class DocumentPool {
+
+	private static final String SKELETON_KEY = DocumentPool.class.getName();
+
+	private final DocumentBuilderPool mBuilders;
+	private final AtomicReferenceArray<Skeleton> mSlots;
+	private final int mDepth;
+	private final int mStripes;
+	private final int mMask;
+
+	/**
+	 * Constructor
+	 *
+	 * @param builders
+	 *            builders creating new skeletons
+	 * @param depth
+	 *            documents kept per element type and stripe, at least 1
+	 */
+	DocumentPool(DocumentBuilderPool builders, int depth) {
+		if (depth < 1) {
+			throw new IllegalArgumentException("depth must be positive");
+		}
+		mBuilders = builders;
+		mDepth = depth;
+		mStripes = DocumentBuilderPool.stripes();
+		mMask = mStripes - 1;
+		mSlots = new AtomicReferenceArray<Skeleton>(SimuElement.values().length
+				* mStripes * depth);
+	}
+
+	/**
+	 * Taking a document from the pool or creating a new skeleton
+	 *
+	 * @param element
+	 *            metadatum to create
+	 * @param values
+	 *            value per field, null for absent fields
+	 * @return document owned by the caller until it is released
+	 */
+	Document acquire(SimuElement element, String[] values) {
+		int home = home(element);
+		Skeleton skeleton = null;
+		for (int i = 0; i < mDepth && skeleton == null; i++) {
+			skeleton = mSlots.getAndSet(home + i, null);
+		}
+		if (skeleton == null) {
+			skeleton = new Skeleton(element, newDocument());
+		}
+		skeleton.fill(values);
+		return skeleton.mDocument;
+	}
+
+	/**
+	 * Handing a document back to the pool
+	 *
+	 * @param doc
+	 *            document obtained from {@link #acquire(SimuElement, String[])}
+	 * @return false if the document does not belong to the pool or was
+	 *         released before
+	 */
+	boolean release(Document doc) {
+		Object data = doc.getUserData(SKELETON_KEY);
+		if (!(data instanceof Skeleton)) {
+			return false;
+		}
+		Skeleton skeleton = (Skeleton) data;
+		if (!skeleton.mInUse.compareAndSet(true, false)) {
+			return false;
+		}
+		int home = home(skeleton.mElement);
+		for (int i = 0; i < mDepth; i++) {
+			if (mSlots.compareAndSet(home + i, null, skeleton)) {
+				break;
+			}
+		}
+		return true;
+	}
+
+	private int home(SimuElement element) {
+		return (element.ordinal() * mStripes + DocumentBuilderPool
+				.stripe(mMask)) * mDepth;
+	}
+
+	private Document newDocument() {
+		DocumentBuilder builder = mBuilders.acquire();
+		try {
+			return builder.newDocument();
+		} finally {
+			mBuilders.release(builder);
+		}
+	}
+
+	/**
+	 * Document with all field nodes of one element type
+	 */
+	private static final class Skeleton {
+		final SimuElement mElement;
+		final Document mDocument;
+		final Element mRoot;
+		final Element[] mFields;
+		final Text[] mTexts;
+		final AtomicBoolean mInUse = new AtomicBoolean();
+
+		Skeleton(SimuElement element, Document doc) {
+			mElement = element;
+			mDocument = doc;
+			mRoot = doc.createElementNS(SIMU_METADATA_URI,
+					SIMU_METADATA_PREFIX + ":" + element.getName());
+			mRoot.setAttributeNS(null, "ifmap-cardinality", element
+					.getCardinality().toString());
+			doc.appendChild(mRoot);
+
+			int count = element.getFieldCount();
+			mFields = new Element[count];
+			mTexts = new Text[count];
+			for (int i = 0; i < count; i++) {
+				mFields[i] = doc.createElementNS(null, element.getFieldName(i));
+				mTexts[i] = doc.createTextNode("");
+				mFields[i].appendChild(mTexts[i]);
+			}
+			doc.setUserData(SKELETON_KEY, this, null);
+		}
+
+		/**
+		 * Setting the values. All children of the root are detached first, so
+		 * a document changed by its previous user is restored.
+		 */
+		void fill(String[] values) {
+			Node child;
+			while ((child = mRoot.getLastChild()) != null) {
+				mRoot.removeChild(child);
+			}
+			for (int i = 0; i < values.length; i++) {
+				if (values[i] != null) {
+					mTexts[i].setData(values[i]);
+					mRoot.appendChild(mFields[i]);
+				}
+			}
+			mInUse.set(true);
+		}
+	}
+}
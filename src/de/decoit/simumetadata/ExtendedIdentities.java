@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.simumetadata;
+
+import java.util.Arrays;
+import java.util.Comparator;
+
+import de.hshannover.f4.trust.ifmapj.exception.MarshalException;
+import de.hshannover.f4.trust.ifmapj.identifier.Identifiers;
+import de.hshannover.f4.trust.ifmapj.identifier.Identity;
+import de.hshannover.f4.trust.ifmapj.identifier.IdentityType;
+
+/**
+ * Builder of SIMU extended identifiers without a DOM. ifmapj's
+ * {@link Identifiers#createExtendedIdentity(org.w3c.dom.Document)} serializes
+ * the document with a Transformer, parses the result again to canonicalize it
+ * and escapes the canonical XML into the name of an other identity. This class
+ * writes the escaped canonical XML of the flat SIMU identifier elements
+ * directly: default namespace declaration first, attributes sorted by name,
+ * start and end tag. Like ifmapj, values consisting of whitespace only are
+ * written as empty attributes. The name is identical to ifmapj's, including its
+ * encoding of characters above U+00A0 as one char per UTF-8 byte, so
+ * identifiers stay equal to those published by other ifmapj clients.
+ *
+ * @author DECOIT GmbH
+ *
+ */
+final class ExtendedIdentities {
+
+	private static final String EXTENDED = "extended";
+
+	/**
+	 * Escaped replacement per character below U+00A1, null to copy it
+	 */
+	private static final String[] ESCAPES = new String[0xA1];
+
+	private static final String[] NAME_STARTS;
+	private static final String[] NAME_ENDS;
+	private static final String[][] ATTRIBUTE_STARTS;
+	private static final int[][] ATTRIBUTE_ORDER;
+	private static final String ATTRIBUTE_END = "&quot;";
+
+	static {
+		ESCAPES['&'] = "&amp;amp;";
+		ESCAPES['<'] = "&amp;lt;";
+		ESCAPES['>'] = "&amp;gt;";
+		ESCAPES['"'] = "&amp;quot;";
+		ESCAPES['\''] = "&apos;";
+		ESCAPES['\t'] = "&amp;#9;";
+		ESCAPES['\n'] = "&amp;#10;";
+		ESCAPES['\r'] = "&amp;#13;";
+		for (int c = 0x80; c <= 0xA0; c++) {
+			ESCAPES[c] = "&amp;#" + c + ";";
+		}
+
+		SimuElement[] elements = SimuElement.values();
+		NAME_STARTS = new String[elements.length];
+		NAME_ENDS = new String[elements.length];
+		ATTRIBUTE_STARTS = new String[elements.length][];
+		ATTRIBUTE_ORDER = new int[elements.length][];
+		for (final SimuElement e : elements) {
+			if (e.isMetadata()) {
+				continue;
+			}
+			int o = e.ordinal();
+			NAME_STARTS[o] = "&lt;" + e.getName() + " xmlns=&quot;"
+					+ SimuMetaDataFactory.SIMU_IDENTIFIER_URI + "&quot;";
+			NAME_ENDS[o] = "&gt;&lt;/" + e.getName() + "&gt;";
+
+			Integer[] order = new Integer[e.getFieldCount()];
+			ATTRIBUTE_STARTS[o] = new String[order.length];
+			for (int i = 0; i < order.length; i++) {
+				order[i] = i;
+				ATTRIBUTE_STARTS[o][i] = " " + e.getFieldName(i) + "=&quot;";
+			}
+			Arrays.sort(order, new Comparator<Integer>() {
+				@Override
+				public int compare(Integer a, Integer b) {
+					return e.getFieldName(a).compareTo(e.getFieldName(b));
+				}
+			});
+			ATTRIBUTE_ORDER[o] = new int[order.length];
+			for (int i = 0; i < order.length; i++) {
+				ATTRIBUTE_ORDER[o][i] = order[i];
+			}
+		}
+	}
+
+	private ExtendedIdentities() {
+	}
+
+	/**
+	 * Creating an extended identifier. Required fields are always set as
+	 * attributes, empty if null; optional ones only if present.
+	 *
+	 * @param element
+	 *            schema of the identifier
+	 * @param values
+	 *            value per field of the schema, null if absent
+	 * @return other identity of type extended
+	 * @throws MarshalException
+	 *             if a value contains a character not allowed in XML
+	 */
+	static Identity create(SimuElement element, String... values)
+			throws MarshalException {
+		return Identifiers.createIdentity(IdentityType.other,
+				toName(element, values), null, EXTENDED);
+	}
+
+	/**
+	 * Writing the escaped canonical XML of an extended identifier
+	 *
+	 * @param element
+	 *            schema of the identifier
+	 * @param values
+	 *            value per field of the schema, null if absent
+	 * @return name of the identity
+	 * @throws MarshalException
+	 *             if a value contains a character not allowed in XML
+	 */
+	static String toName(SimuElement element, String... values)
+			throws MarshalException {
+		if (element.isMetadata()) {
+			throw new IllegalArgumentException(element.getName()
+					+ " is not an identifier");
+		}
+		int o = element.ordinal();
+		int length = NAME_STARTS[o].length() + NAME_ENDS[o].length();
+		for (int i = 0; i < values.length; i++) {
+			if (values[i] != null) {
+				int illegal = XmlChars.indexOfIllegal(values[i]);
+				if (illegal >= 0) {
+					throw new MarshalException(XmlChars.describeIllegal(
+							element, i, values[i], illegal));
+				}
+				length += ATTRIBUTE_STARTS[o][i].length() + values[i].length()
+						+ ATTRIBUTE_END.length();
+			}
+		}
+
+		StringBuilder sb = new StringBuilder(length + 16);
+		sb.append(NAME_STARTS[o]);
+		for (int i : ATTRIBUTE_ORDER[o]) {
+			String value = i < values.length ? values[i] : null;
+			if (value == null && !element.isRequired(i)) {
+				continue;
+			}
+			sb.append(ATTRIBUTE_STARTS[o][i]);
+			if (value != null && !isWhitespace(value)) {
+				appendEscaped(sb, value);
+			}
+			sb.append(ATTRIBUTE_END);
+		}
+		return sb.append(NAME_ENDS[o]).toString();
+	}
+
+	/**
+	 * @return true if s consists of whitespace only, which the
+	 *         canonicalization in ifmapj strips from attribute values
+	 */
+	private static boolean isWhitespace(String s) {
+		for (int i = 0; i < s.length(); i++) {
+			if (!Character.isWhitespace(s.charAt(i))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Appending a legal attribute value as the canonicalization and the
+	 * escaping in ifmapj would write it
+	 */
+	private static void appendEscaped(StringBuilder sb, String s) {
+		int len = s.length();
+		int start = 0;
+		for (int i = 0; i < len; i++) {
+			char c = s.charAt(i);
+			if (c < 0xA1) {
+				if (ESCAPES[c] == null) {
+					continue;
+				}
+				sb.append(s, start, i).append(ESCAPES[c]);
+			} else {
+				sb.append(s, start, i);
+				if (c < 0x800) {
+					sb.append((char) (0xC0 | c >> 6));
+				} else if (Character.isHighSurrogate(c)) {
+					int cp = Character.toCodePoint(c, s.charAt(++i));
+					sb.append((char) (0xF0 | cp >> 18));
+					sb.append((char) (0x80 | cp >> 12 & 0x3F));
+					sb.append((char) (0x80 | cp >> 6 & 0x3F));
+					c = (char) (cp & 0x3F);
+				} else {
+					sb.append((char) (0xE0 | c >> 12));
+					sb.append((char) (0x80 | c >> 6 & 0x3F));
+				}
+				sb.append((char) (0x80 | c & 0x3F));
+			}
+			start = i + 1;
+		}
+		sb.append(s, start, len);
+	}
+}
@@ -0,0 +1,300 @@
+/*
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.simumetadata;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.w3c.dom.Document;
+
+import de.hshannover.f4.trust.ifmapj.exception.MarshalException;
+import de.hshannover.f4.trust.ifmapj.identifier.Identifier;
+
+/**
+ * Index of the last reported status of monitored files. A file integrity
+ * monitor reports every file of a scan with {@link #update}; file identifier
+ * and file-status metadatum are only created for new files and for files whose
+ * status or importance changed since the previous report. The discovery time
+ * is not compared. Unchanged files cost a hash lookup and no allocation, so the
+ * publishing work of a rescan is proportional to the number of changes.
+ *
+ * Per path the index keeps the path string first reported and one packed
+ * long: the scan the file was last seen in and codes for status and
+ * importance. Status and importance strings are interned into a table of at
+ * most 65536 distinct values each.
+ *
+ * Files not reported during a scan can be collected with {@link #endScan()}.
+ * All methods are lock-free and safe for concurrent scanner threads.
+ *
+ * @author DECOIT GmbH
+ *
+ */
+public class FileStatusTracker {
+
+	private static final int MAX_CODES = 1 << 16;
+
+	private final SimuMetaDataFactory mFactory;
+	private final String mAdministrativeDomain;
+	private final ConcurrentHashMap<String, AtomicLong> mFiles = new ConcurrentHashMap<String, AtomicLong>();
+	private final Codes mStatusCodes = new Codes(SimuElement.FILE_STATUS, 0);
+	private final Codes mImportanceCodes = new Codes(SimuElement.FILE_STATUS,
+			2);
+	private final AtomicInteger mScan = new AtomicInteger();
+	private final AtomicLong mChanged = new AtomicLong();
+	private final AtomicLong mUnchanged = new AtomicLong();
+
+	/**
+	 * Constructor
+	 *
+	 * @param factory
+	 *            factory creating identifiers and metadata of changed files
+	 * @param ad
+	 *            administrative domain of the file identifiers
+	 */
+	public FileStatusTracker(SimuMetaDataFactory factory, String ad) {
+		if (factory == null) {
+			throw new NullPointerException("factory must not be null");
+		}
+		mFactory = factory;
+		mAdministrativeDomain = ad;
+	}
+
+	/**
+	 * Reporting the current status of a file
+	 *
+	 * @param path
+	 *            path of the file
+	 * @param status
+	 *            file status
+	 * @param time
+	 *            discovering time, used for the metadatum only
+	 * @param importance
+	 *            severity of the status
+	 * @return identifier and metadatum to publish, null if status and
+	 *         importance are unchanged
+	 * @throws MarshalException
+	 *             if the file identifier cannot be created; the previous
+	 *             status of the file is kept, so the change is reported again
+	 */
+	public Change update(String path, String status, String time,
+			String importance) throws MarshalException {
+		SimuElement.FILE.checkNotNull(0, path);
+		SimuElement.FILE_STATUS.checkNotNull(1, time);
+		long state = pack(mScan.get(), mStatusCodes.code(status),
+				mImportanceCodes.code(importance));
+
+		AtomicLong file = mFiles.get(path);
+		if (file == null) {
+			AtomicLong added = new AtomicLong(state);
+			AtomicLong known = mFiles.putIfAbsent(path, added);
+			if (known == null) {
+				boolean done = false;
+				try {
+					Change change = change(path, status, time, importance);
+					done = true;
+					return change;
+				} finally {
+					if (!done) {
+						mFiles.remove(path, added);
+					}
+				}
+			}
+			file = known;
+		}
+		while (true) {
+			long last = file.get();
+			if ((int) last == (int) state) {
+				// unchanged, only mark the file as seen in this scan
+				if (last == state || file.compareAndSet(last, state)) {
+					mUnchanged.incrementAndGet();
+					return null;
+				}
+			} else if (file.compareAndSet(last, state)) {
+				boolean done = false;
+				try {
+					Change change = change(path, status, time, importance);
+					done = true;
+					return change;
+				} finally {
+					if (!done) {
+						// unless a concurrent report already replaced it
+						file.compareAndSet(state, last);
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Starting a new scan. Files reported from now on are marked as seen in
+	 * the new scan.
+	 */
+	public void beginScan() {
+		mScan.incrementAndGet();
+	}
+
+	/**
+	 * Ending the current scan. Files not reported since the last
+	 * {@link #beginScan()} are removed from the index, so a file showing up
+	 * again is reported as new. Must not run concurrently with
+	 * {@link #update} calls of the same scan.
+	 *
+	 * @return paths of the files not reported in the current scan
+	 */
+	public List<String> endScan() {
+		int scan = mScan.get();
+		List<String> missing = new ArrayList<String>();
+		Iterator<Map.Entry<String, AtomicLong>> it = mFiles.entrySet()
+				.iterator();
+		while (it.hasNext()) {
+			Map.Entry<String, AtomicLong> e = it.next();
+			if ((int) (e.getValue().get() >>> 32) != scan) {
+				it.remove();
+				missing.add(e.getKey());
+			}
+		}
+		return missing;
+	}
+
+	/**
+	 * Forgetting a file, e.g. after it was deleted
+	 *
+	 * @param path
+	 *            path of the file
+	 * @return true if the file was known
+	 */
+	public boolean remove(String path) {
+		return mFiles.remove(path) != null;
+	}
+
+	/**
+	 * @return number of files in the index
+	 */
+	public int size() {
+		return mFiles.size();
+	}
+
+	/**
+	 * @return number of reports that created metadata
+	 */
+	public long getChangedCount() {
+		return mChanged.get();
+	}
+
+	/**
+	 * @return number of reports without a change
+	 */
+	public long getUnchangedCount() {
+		return mUnchanged.get();
+	}
+
+	/**
+	 * Forgetting all files. Statistics and interned values are kept.
+	 */
+	public void clear() {
+		mFiles.clear();
+	}
+
+	private Change change(String path, String status, String time,
+			String importance) throws MarshalException {
+		Change change = new Change(path, mFactory.createFileIdentifier(path,
+				mAdministrativeDomain), mFactory.createFileChanged(status,
+				time, importance));
+		mChanged.incrementAndGet();
+		return change;
+	}
+
+	private static long pack(int scan, int status, int importance) {
+		return (long) scan << 32 | (long) status << 16 | importance;
+	}
+
+	/**
+	 * Table interning the values of one field
+	 */
+	private static final class Codes {
+		private final ConcurrentHashMap<String, Integer> mCodes = new ConcurrentHashMap<String, Integer>();
+		private final AtomicInteger mNext = new AtomicInteger();
+		private final SimuElement mElement;
+		private final int mField;
+
+		Codes(SimuElement element, int field) {
+			mElement = element;
+			mField = field;
+		}
+
+		/**
+		 * @return code of the value, below 65536
+		 */
+		int code(String value) {
+			mElement.checkNotNull(mField, value);
+			Integer code = mCodes.get(value);
+			if (code != null) {
+				return code;
+			}
+			int next = mNext.get() < MAX_CODES ? mNext.getAndIncrement()
+					: MAX_CODES;
+			if (next >= MAX_CODES) {
+				throw new IllegalStateException("more than " + MAX_CODES
+						+ " distinct values of " + mElement.getFieldName(mField));
+			}
+			code = mCodes.putIfAbsent(value, next);
+			return code == null ? next : code;
+		}
+	}
+
+	/**
+	 * Changed file with the identifier and the file-status metadatum to
+	 * publish on it
+	 */
+	public static final class Change {
+		private final String mPath;
+		private final Identifier mIdentifier;
+		private final Document mMetadata;
+
+		Change(String path, Identifier identifier, Document metadata) {
+			mPath = path;
+			mIdentifier = identifier;
+			mMetadata = metadata;
+		}
+
+		/**
+		 * @return path of the file
+		 */
+		public String getPath() {
+			return mPath;
+		}
+
+		/**
+		 * @return file identifier
+		 */
+		public Identifier getIdentifier() {
+			return mIdentifier;
+		}
+
+		/**
+		 * @return file-status metadatum
+		 */
+		public Document getMetadata() {
+			return mMetadata;
+		}
+	}
+}
@@ -0,0 +1,278 @@
+/*
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.simumetadata;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+import de.hshannover.f4.trust.ifmapj.identifier.Identifier;
+
+/**
+ * Bounded cache for SIMU extended identifiers, keyed on the element name and
+ * the attribute values. Pass an instance to
+ * {@link SimuMetadataFactoryImpl#SimuMetadataFactoryImpl(IdentifierCache)} to
+ * let the factory return already built identifiers for repeated attribute
+ * tuples instead of marshalling them again.
+ *
+ * Entries are evicted in least recently used order once the maximum size is
+ * reached. If a time to live is set, older entries are dropped when they are
+ * looked up or become the eldest entry of their segment. The cache is split
+ * into independently locked segments of equal capacity, so the LRU order is
+ * kept per segment and the effective capacity is rounded down to a multiple of
+ * the segment count.
+ *
+ * Cached identifiers are shared between all callers and must not be modified.
+ *
+ * @author DECOIT GmbH
+ *
+ */
+public class IdentifierCache {
+
+	private static final int MAX_SEGMENTS = 16;
+
+	private final Segment[] mSegments;
+	private final long mTtlNanos;
+	private final AtomicLong mHits = new AtomicLong();
+	private final AtomicLong mMisses = new AtomicLong();
+	private final AtomicLong mEvictions = new AtomicLong();
+
+	/**
+	 * Constructor for a cache evicting by size only
+	 *
+	 * @param maxSize
+	 *            maximum number of cached identifiers
+	 */
+	public IdentifierCache(int maxSize) {
+		this(maxSize, 0, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param maxSize
+	 *            maximum number of cached identifiers
+	 * @param timeToLive
+	 *            maximum age of an entry, 0 for no time based eviction
+	 * @param unit
+	 *            unit of timeToLive
+	 */
+	public IdentifierCache(int maxSize, long timeToLive, TimeUnit unit) {
+		if (maxSize < 1) {
+			throw new IllegalArgumentException("maxSize must be positive");
+		}
+		if (timeToLive < 0) {
+			throw new IllegalArgumentException(
+					"timeToLive must not be negative");
+		}
+		int segments = Math.min(MAX_SEGMENTS,
+				Integer.highestOneBit(maxSize));
+		int perSegment = maxSize / segments;
+		mSegments = new Segment[segments];
+		for (int i = 0; i < segments; i++) {
+			mSegments[i] = new Segment(perSegment);
+		}
+		mTtlNanos = unit.toNanos(timeToLive);
+	}
+
+	/**
+	 * Looking up a cached identifier
+	 *
+	 * @param key
+	 *            key of the identifier
+	 * @return cached identifier or null
+	 */
+	Identifier get(Key key) {
+		Segment segment = segmentFor(key);
+		Identifier result = null;
+		segment.mLock.lock();
+		try {
+			CachedIdentifier entry = segment.mMap.get(key);
+			if (entry != null) {
+				if (isExpired(entry, System.nanoTime())) {
+					segment.mMap.remove(key);
+					mEvictions.incrementAndGet();
+				} else {
+					result = entry.mIdentifier;
+				}
+			}
+		} finally {
+			segment.mLock.unlock();
+		}
+		(result == null ? mMisses : mHits).incrementAndGet();
+		return result;
+	}
+
+	/**
+	 * Adding an identifier to the cache
+	 *
+	 * @param key
+	 *            key of the identifier
+	 * @param identifier
+	 *            identifier to cache
+	 */
+	void put(Key key, Identifier identifier) {
+		Segment segment = segmentFor(key);
+		long now = System.nanoTime();
+		segment.mLock.lock();
+		try {
+			segment.mMap.put(key, new CachedIdentifier(identifier, now));
+		} finally {
+			segment.mLock.unlock();
+		}
+	}
+
+	/**
+	 * @return number of lookups answered from the cache
+	 */
+	public long getHitCount() {
+		return mHits.get();
+	}
+
+	/**
+	 * @return number of lookups not answered from the cache
+	 */
+	public long getMissCount() {
+		return mMisses.get();
+	}
+
+	/**
+	 * @return number of entries dropped because of size or age
+	 */
+	public long getEvictionCount() {
+		return mEvictions.get();
+	}
+
+	/**
+	 * @return share of lookups answered from the cache, 0 if there were none
+	 */
+	public double getHitRate() {
+		long hits = mHits.get();
+		long total = hits + mMisses.get();
+		return total == 0 ? 0 : (double) hits / total;
+	}
+
+	/**
+	 * @return current number of cached identifiers
+	 */
+	public int size() {
+		int size = 0;
+		for (Segment segment : mSegments) {
+			segment.mLock.lock();
+			try {
+				size += segment.mMap.size();
+			} finally {
+				segment.mLock.unlock();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * Removing all entries. Statistics are kept.
+	 */
+	public void clear() {
+		for (Segment segment : mSegments) {
+			segment.mLock.lock();
+			try {
+				segment.mMap.clear();
+			} finally {
+				segment.mLock.unlock();
+			}
+		}
+	}
+
+	private boolean isExpired(CachedIdentifier entry, long now) {
+		return mTtlNanos > 0 && now - entry.mCreated > mTtlNanos;
+	}
+
+	private Segment segmentFor(Key key) {
+		int h = key.hashCode();
+		h ^= h >>> 16;
+		return mSegments[h & (mSegments.length - 1)];
+	}
+
+	/**
+	 * Cache key made of the element name and the attribute values
+	 */
+	static final class Key {
+		private final String mElement;
+		private final Object[] mValues;
+		private final int mHash;
+
+		Key(String element, Object... values) {
+			mElement = element;
+			mValues = values;
+			mHash = 31 * element.hashCode() + Arrays.hashCode(values);
+		}
+
+		@Override
+		public int hashCode() {
+			return mHash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return mHash == other.mHash && mElement.equals(other.mElement)
+					&& Arrays.equals(mValues, other.mValues);
+		}
+	}
+
+	private static final class CachedIdentifier {
+		private final Identifier mIdentifier;
+		private final long mCreated;
+
+		CachedIdentifier(Identifier identifier, long created) {
+			mIdentifier = identifier;
+			mCreated = created;
+		}
+	}
+
+	private final class Segment {
+		private final ReentrantLock mLock = new ReentrantLock();
+		private final LinkedHashMap<Key, CachedIdentifier> mMap;
+
+		Segment(final int maxSize) {
+			mMap = new LinkedHashMap<Key, CachedIdentifier>(16, 0.75f,
+					true) {
+				private static final long serialVersionUID = 1L;
+
+				@Override
+				protected boolean removeEldestEntry(
+						Map.Entry<Key, CachedIdentifier> eldest) {
+					// expired entries elsewhere go on lookup or by size
+					if (size() > maxSize
+							|| isExpired(eldest.getValue(), System.nanoTime())) {
+						mEvictions.incrementAndGet();
+						return true;
+					}
+					return false;
+				}
+			};
+		}
+	}
+}
@@ -0,0 +1,302 @@
+/*
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.simumetadata;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.hshannover.f4.trust.ifmapj.channel.ARC;
+import de.hshannover.f4.trust.ifmapj.channel.SSRC;
+import de.hshannover.f4.trust.ifmapj.exception.IfmapErrorCode;
+import de.hshannover.f4.trust.ifmapj.exception.IfmapErrorResult;
+import de.hshannover.f4.trust.ifmapj.exception.IfmapException;
+import de.hshannover.f4.trust.ifmapj.exception.InitializationException;
+import de.hshannover.f4.trust.ifmapj.messages.MetadataHolder;
+import de.hshannover.f4.trust.ifmapj.messages.PublishElement;
+import de.hshannover.f4.trust.ifmapj.messages.PublishRequest;
+import de.hshannover.f4.trust.ifmapj.messages.Request;
+import de.hshannover.f4.trust.ifmapj.messages.Result;
+import de.hshannover.f4.trust.ifmapj.messages.SearchRequest;
+import de.hshannover.f4.trust.ifmapj.messages.SearchResult;
+import de.hshannover.f4.trust.ifmapj.messages.SubscribeRequest;
+
+/**
+ * In-process stand-in for a MAP server, for tests and throughput measurements
+ * of publishing code without a network. Publish requests are checked the way
+ * a MAP server would (open session, identifier and metadata present), counted
+ * and optionally retained. A per-request latency can be set to simulate the
+ * round trip to a real server. Subscriptions and searches are not supported
+ * and fail with an {@link IfmapErrorResult} of code Failure, as a server
+ * rejecting the request would; {@link #getArc()} fails with an
+ * {@link InitializationException}.
+ *
+ * @author DECOIT GmbH
+ *
+ */
+public class LocalMapServer implements SSRC {
+
+	private static final AtomicInteger SESSIONS = new AtomicInteger();
+
+	private final boolean mRetain;
+	private final ConcurrentLinkedQueue<PublishElement> mPublished = new ConcurrentLinkedQueue<PublishElement>();
+	private final AtomicLong mRequests = new AtomicLong();
+	private final AtomicLong mElements = new AtomicLong();
+	private final AtomicLong mMetadata = new AtomicLong();
+	private volatile long mLatencyNanos;
+	private volatile String mSessionId;
+	private volatile String mPublisherId;
+	private volatile Integer mMaxPollResSize;
+	private volatile boolean mGzip;
+
+	/**
+	 * Constructor for a server counting published elements only
+	 */
+	public LocalMapServer() {
+		this(false);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param retain
+	 *            true to keep every published element
+	 */
+	public LocalMapServer(boolean retain) {
+		mRetain = retain;
+	}
+
+	/**
+	 * @param latency
+	 *            time every publish request takes
+	 * @param unit
+	 *            unit of latency
+	 */
+	public void setLatency(long latency, TimeUnit unit) {
+		mLatencyNanos = unit.toNanos(latency);
+	}
+
+	/**
+	 * @return number of publish requests accepted
+	 */
+	public long getRequestCount() {
+		return mRequests.get();
+	}
+
+	/**
+	 * @return number of publish elements accepted
+	 */
+	public long getElementCount() {
+		return mElements.get();
+	}
+
+	/**
+	 * @return number of metadata documents accepted
+	 */
+	public long getMetadataCount() {
+		return mMetadata.get();
+	}
+
+	/**
+	 * @return published elements in the order they were accepted, empty
+	 *         unless retaining
+	 */
+	public List<PublishElement> getPublished() {
+		return new ArrayList<PublishElement>(mPublished);
+	}
+
+	/**
+	 * Clearing retained elements and counters
+	 */
+	public void reset() {
+		mPublished.clear();
+		mRequests.set(0);
+		mElements.set(0);
+		mMetadata.set(0);
+	}
+
+	@Override
+	public void newSession() throws IfmapErrorResult, IfmapException {
+		newSession(null);
+	}
+
+	@Override
+	public void newSession(Integer maxPollResSize) throws IfmapErrorResult,
+			IfmapException {
+		mMaxPollResSize = maxPollResSize;
+		mPublisherId = "local-publisher";
+		mSessionId = "local-session-" + SESSIONS.incrementAndGet();
+	}
+
+	@Override
+	public void endSession() throws IfmapErrorResult, IfmapException {
+		checkSession();
+		mSessionId = null;
+	}
+
+	@Override
+	public void renewSession() throws IfmapErrorResult, IfmapException {
+		checkSession();
+	}
+
+	@Override
+	public void purgePublisher() throws IfmapErrorResult, IfmapException {
+		purgePublisher(mPublisherId);
+	}
+
+	@Override
+	public void purgePublisher(String publisherId) throws IfmapErrorResult,
+			IfmapException {
+		checkSession();
+		mPublished.clear();
+	}
+
+	@Override
+	public void publish(PublishRequest request) throws IfmapErrorResult,
+			IfmapException {
+		checkSession();
+		List<PublishElement> elements = request.getPublishElements();
+		if (elements.isEmpty()) {
+			throw new IfmapErrorResult(IfmapErrorCode.Failure,
+					"publish request without elements");
+		}
+		int metadata = 0;
+		for (PublishElement e : elements) {
+			if (e instanceof MetadataHolder) {
+				MetadataHolder holder = (MetadataHolder) e;
+				if (holder.getIdentifier1() == null) {
+					throw new IfmapErrorResult(
+							IfmapErrorCode.InvalidIdentifier,
+							"publish element without identifier");
+				}
+				if (holder.getMetadata().isEmpty()) {
+					throw new IfmapErrorResult(IfmapErrorCode.InvalidMetadata,
+							"publish element without metadata");
+				}
+				metadata += holder.getMetadata().size();
+			}
+		}
+
+		long latency = mLatencyNanos;
+		if (latency > 0) {
+			try {
+				TimeUnit.NANOSECONDS.sleep(latency);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IfmapException("publish interrupted", e);
+			}
+		}
+
+		if (mRetain) {
+			mPublished.addAll(elements);
+		}
+		mRequests.incrementAndGet();
+		mElements.addAndGet(elements.size());
+		mMetadata.addAndGet(metadata);
+	}
+
+	@Override
+	public void subscribe(SubscribeRequest request) throws IfmapErrorResult,
+			IfmapException {
+		throw new IfmapErrorResult(IfmapErrorCode.Failure,
+				"subscribe is not supported by LocalMapServer");
+	}
+
+	@Override
+	public SearchResult search(SearchRequest request) throws IfmapErrorResult,
+			IfmapException {
+		throw new IfmapErrorResult(IfmapErrorCode.Failure,
+				"search is not supported by LocalMapServer");
+	}
+
+	@Override
+	public ARC getArc() throws InitializationException {
+		throw new InitializationException(
+				"ARC is not supported by LocalMapServer");
+	}
+
+	@Override
+	public Result genericRequest(Request request) throws IfmapErrorResult,
+			IfmapException {
+		if (request instanceof PublishRequest) {
+			publish((PublishRequest) request);
+			return null;
+		}
+		throw new IfmapErrorResult(IfmapErrorCode.Failure, request.getClass()
+				.getSimpleName() + " is not supported by LocalMapServer");
+	}
+
+	@Override
+	public Result genericRequestWithSessionId(Request request)
+			throws IfmapErrorResult, IfmapException {
+		return genericRequest(request);
+	}
+
+	@Override
+	public String getSessionId() {
+		return mSessionId;
+	}
+
+	@Override
+	public void setSessionId(String sessionId) {
+		mSessionId = sessionId;
+	}
+
+	@Override
+	public String getPublisherId() {
+		return mPublisherId;
+	}
+
+	@Override
+	public void setPublisherId(String publisherId) {
+		mPublisherId = publisherId;
+	}
+
+	@Override
+	public Integer getMaxPollResSize() {
+		return mMaxPollResSize;
+	}
+
+	@Override
+	public void setMaxPollResSize(Integer maxPollResSize) {
+		mMaxPollResSize = maxPollResSize;
+	}
+
+	@Override
+	public void closeTcpConnection() {
+	}
+
+	@Override
+	public void setGzip(boolean gzip) {
+		mGzip = gzip;
+	}
+
+	@Override
+	public boolean usesGzip() {
+		return mGzip;
+	}
+
+	private void checkSession() throws IfmapErrorResult {
+		if (mSessionId == null) {
+			throw new IfmapErrorResult(IfmapErrorCode.InvalidSessionID,
+					"no session");
+		}
+	}
+}
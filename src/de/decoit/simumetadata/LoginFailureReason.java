@@ -16,6 +16,8 @@
  */
 package de.decoit.simumetadata;
 
+import java.nio.ByteBuffer;
+
 /**
  * Login Failure Reason Enum
  * @author Leonid Schwenke, DECOIT GmbH
@@ -26,7 +28,8 @@ public enum LoginFailureReason {
 			"Invalid Credentials"), EXPIRED_CREDENTIALS("Expired Credentials"), COMMUNICATION_FAILURE(
 			"Communication Failure"), UNKNOWN("Unknown"), OTHER("Other");
 
-	public String name;
+	public final String name;
+	private final byte[] mUtf8;
 
 	/**
 	 * Constructor
@@ -34,6 +37,7 @@ public enum LoginFailureReason {
 	 */
 	private LoginFailureReason(String name) {
 		this.name = name;
+		this.mUtf8 = name.getBytes(XmlFragment.UTF8);
 	}
 
 	/**
@@ -42,4 +46,26 @@ public enum LoginFailureReason {
 	public String toString() {
 		return name;
 	};
+
+	/**
+	 * UTF-8 encoded name, computed once
+	 * @return read-only view of the encoded name
+	 */
+	public ByteBuffer getUtf8() {
+		return ByteBuffer.wrap(mUtf8).asReadOnlyBuffer();
+	}
+
+	/**
+	 * Looking up a constant by its name as used in the metadata
+	 * @param name Failure Reason as returned by toString()
+	 * @return matching constant or null
+	 */
+	public static LoginFailureReason forName(String name) {
+		for (LoginFailureReason c : values()) {
+			if (c.name.equals(name)) {
+				return c;
+			}
+		}
+		return null;
+	}
 }
@@ -0,0 +1,361 @@
+/*
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.simumetadata;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import org.w3c.dom.Document;
+
+import de.hshannover.f4.trust.ifmapj.exception.MarshalException;
+import de.hshannover.f4.trust.ifmapj.identifier.Identifier;
+
+/**
+ * {@link SimuMetaDataFactory} decorator recording count and latency of every
+ * call in a {@link SimuMetrics} instance. Failed calls are not recorded.
+ *
+ * @author DECOIT GmbH
+ *
+ */
+public class MeteredSimuMetaDataFactory implements
+		SimuMetaDataFactoryExtension {
+
+	private final SimuMetaDataFactory mDelegate;
+	private final SimuMetrics mMetrics;
+
+	/**
+	 * Constructor
+	 *
+	 * @param delegate
+	 *            factory doing the work
+	 * @param metrics
+	 *            metrics to record into
+	 */
+	public MeteredSimuMetaDataFactory(SimuMetaDataFactory delegate,
+			SimuMetrics metrics) {
+		if (delegate == null || metrics == null) {
+			throw new NullPointerException(
+					"delegate and metrics must not be null");
+		}
+		mDelegate = delegate;
+		mMetrics = metrics;
+		if (delegate instanceof SimuMetadataFactoryImpl) {
+			IdentifierCache cache = ((SimuMetadataFactoryImpl) delegate)
+					.getIdentifierCache();
+			if (cache != null) {
+				metrics.setIdentifierCache(cache);
+			}
+		}
+	}
+
+	/**
+	 * @return metrics recorded into
+	 */
+	public SimuMetrics getMetrics() {
+		return mMetrics;
+	}
+
+	/**
+	 * Serialize a document as done by
+	 * {@link SimuMetadataFactoryImpl#getXMLString(Document)}, recording the
+	 * duration and the UTF-8 length of the output
+	 *
+	 * @param doc
+	 *            document to serialize
+	 * @return XML string or null if the document cannot be serialized
+	 */
+	public String getXMLString(Document doc) {
+		long start = System.nanoTime();
+		String xml;
+		try {
+			xml = SimuXmlSerializer.toXmlString(doc);
+		} catch (IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+		mMetrics.recordSerialized(utf8Length(xml), System.nanoTime() - start);
+		return xml;
+	}
+
+	/**
+	 * Serialize a document UTF-8 encoded to a stream as done by
+	 * {@link SimuXmlSerializer#serialize(Document, OutputStream)}, recording
+	 * the duration and the number of bytes written
+	 *
+	 * @param doc
+	 *            document to serialize
+	 * @param stream
+	 *            target stream, not flushed or closed
+	 * @throws IOException
+	 *             if the document cannot be serialized or written
+	 */
+	public void serialize(Document doc, OutputStream stream)
+			throws IOException {
+		long start = System.nanoTime();
+		CountingOutputStream counter = new CountingOutputStream(stream);
+		SimuXmlSerializer.serialize(doc, counter);
+		mMetrics.recordSerialized((int) counter.mCount, System.nanoTime()
+				- start);
+	}
+
+	/**
+	 * Serialize a document UTF-8 encoded into a buffer as done by
+	 * {@link SimuXmlSerializer#serialize(Document, ByteBuffer)}, recording the
+	 * duration and the number of bytes written
+	 *
+	 * @param doc
+	 *            document to serialize
+	 * @param buffer
+	 *            target buffer
+	 * @throws IOException
+	 *             if the document cannot be serialized
+	 * @throws BufferOverflowException
+	 *             if the buffer is too small; its position is left unchanged
+	 */
+	public void serialize(Document doc, ByteBuffer buffer) throws IOException {
+		long start = System.nanoTime();
+		int position = buffer.position();
+		SimuXmlSerializer.serialize(doc, buffer);
+		mMetrics.recordSerialized(buffer.position() - position,
+				System.nanoTime() - start);
+	}
+
+	@Override
+	public Document createIdentifiesAs() {
+		return createLink(SimuLink.IDENTIFIES_AS);
+	}
+
+	@Override
+	public Document createLoginFailure(CredentialType type,
+			LoginFailureReason reason) {
+		long start = System.nanoTime();
+		Document doc = mDelegate.createLoginFailure(type, reason);
+		mMetrics.record(SimuOperation.LOGIN_FAILURE, 1, System.nanoTime()
+				- start);
+		return doc;
+	}
+
+	@Override
+	public Document createLoginFailure(CredentialType type,
+			LoginFailureReason reason, String typeDef, String reasonDef) {
+		long start = System.nanoTime();
+		Document doc = mDelegate.createLoginFailure(type, reason, typeDef,
+				reasonDef);
+		mMetrics.record(SimuOperation.LOGIN_FAILURE, 1, System.nanoTime()
+				- start);
+		return doc;
+	}
+
+	@Override
+	public Document createLoginSuccess(CredentialType type) {
+		long start = System.nanoTime();
+		Document doc = mDelegate.createLoginSuccess(type);
+		mMetrics.record(SimuOperation.LOGIN_SUCCESS, 1, System.nanoTime()
+				- start);
+		return doc;
+	}
+
+	@Override
+	public Document createLoginSuccess(CredentialType type, String typeDef) {
+		long start = System.nanoTime();
+		Document doc = mDelegate.createLoginSuccess(type, typeDef);
+		mMetrics.record(SimuOperation.LOGIN_SUCCESS, 1, System.nanoTime()
+				- start);
+		return doc;
+	}
+
+	@Override
+	public Document createServiceIP() {
+		return createLink(SimuLink.SERVICE_IP);
+	}
+
+	@Override
+	public Document createServiceDiscoveredBy() {
+		return createLink(SimuLink.SERVICE_DISCOVERED_BY);
+	}
+
+	@Override
+	public Document createDeviceDiscoveredBy() {
+		return createLink(SimuLink.DEVICE_DISCOVERED_BY);
+	}
+
+	@Override
+	public Document createLink(SimuLink link) {
+		long start = System.nanoTime();
+		Document doc = link.createDocument(mDelegate);
+		mMetrics.record(SimuOperation.forLink(link), 1, System.nanoTime()
+				- start);
+		return doc;
+	}
+
+	@Override
+	public Document createAttackDetected(String type, String id, float severity) {
+		long start = System.nanoTime();
+		Document doc = mDelegate.createAttackDetected(type, id, severity);
+		mMetrics.record(SimuOperation.ATTACK_DETECTED, 1, System.nanoTime()
+				- start);
+		return doc;
+	}
+
+	@Override
+	public Document createImplementationVulnerability() {
+		return createLink(SimuLink.IMPLEMENTATION_VULNERABILITY);
+	}
+
+	@Override
+	public Document createServiceImplementation() {
+		return createLink(SimuLink.SERVICE_IMPLEMENTATION);
+	}
+
+	@Override
+	public Document createFileMonitored() {
+		return createLink(SimuLink.FILE_MONITORED);
+	}
+
+	@Override
+	public Document createFileChanged(String kind, String time,
+			String importance) {
+		long start = System.nanoTime();
+		Document doc = mDelegate.createFileChanged(kind, time, importance);
+		mMetrics.record(SimuOperation.FILE_STATUS, 1, System.nanoTime()
+				- start);
+		return doc;
+	}
+
+	@Override
+	public List<Document> createFileChanged(String[] kinds, String[] times,
+			String[] importances) {
+		long start = System.nanoTime();
+		List<Document> docs = SimuMetaDataFactories.createFileChanged(
+				mDelegate, kinds, times, importances);
+		mMetrics.record(SimuOperation.FILE_STATUS, docs.size(),
+				System.nanoTime() - start);
+		return docs;
+	}
+
+	@Override
+	public Identifier createVulnerability(String type, String id, float severity)
+			throws MarshalException {
+		long start = System.nanoTime();
+		Identifier identifier = mDelegate.createVulnerability(type, id,
+				severity);
+		mMetrics.record(SimuOperation.VULNERABILITY, 1, System.nanoTime()
+				- start);
+		return identifier;
+	}
+
+	@Override
+	public Identifier createVulnerability(String type, String id)
+			throws MarshalException {
+		long start = System.nanoTime();
+		Identifier identifier = mDelegate.createVulnerability(type, id);
+		mMetrics.record(SimuOperation.VULNERABILITY, 1, System.nanoTime()
+				- start);
+		return identifier;
+	}
+
+	@Override
+	public List<Identifier> createVulnerabilities(String[] types,
+			String[] ids, float[] severities) throws MarshalException {
+		long start = System.nanoTime();
+		List<Identifier> identifiers = SimuMetaDataFactories
+				.createVulnerabilities(mDelegate, types, ids, severities);
+		mMetrics.record(SimuOperation.VULNERABILITY, identifiers.size(),
+				System.nanoTime() - start);
+		return identifiers;
+	}
+
+	@Override
+	public Identifier createImplementation(String name, String version,
+			String localVersion, String platform) throws MarshalException {
+		long start = System.nanoTime();
+		Identifier identifier = mDelegate.createImplementation(name, version,
+				localVersion, platform);
+		mMetrics.record(SimuOperation.IMPLEMENTATION, 1, System.nanoTime()
+				- start);
+		return identifier;
+	}
+
+	@Override
+	public Identifier createImplementation(String name, String version)
+			throws MarshalException {
+		long start = System.nanoTime();
+		Identifier identifier = mDelegate.createImplementation(name, version);
+		mMetrics.record(SimuOperation.IMPLEMENTATION, 1, System.nanoTime()
+				- start);
+		return identifier;
+	}
+
+	@Override
+	public Identifier createService(String type, String name, int port,
+			String ad) throws MarshalException {
+		long start = System.nanoTime();
+		Identifier identifier = mDelegate.createService(type, name, port, ad);
+		mMetrics.record(SimuOperation.SERVICE, 1, System.nanoTime() - start);
+		return identifier;
+	}
+
+	@Override
+	public Identifier createFileIdentifier(String path, String ad)
+			throws MarshalException {
+		long start = System.nanoTime();
+		Identifier identifier = mDelegate.createFileIdentifier(path, ad);
+		mMetrics.record(SimuOperation.FILE, 1, System.nanoTime() - start);
+		return identifier;
+	}
+
+	private static int utf8Length(String s) {
+		int len = s.length();
+		int bytes = len;
+		for (int i = 0; i < len; i++) {
+			char c = s.charAt(i);
+			if (Character.isSurrogate(c)) {
+				// a surrogate pair takes four bytes, two per char
+				bytes++;
+			} else if (c >= 0x800) {
+				bytes += 2;
+			} else if (c >= 0x80) {
+				bytes++;
+			}
+		}
+		return bytes;
+	}
+
+	private static final class CountingOutputStream extends FilterOutputStream {
+		long mCount;
+
+		CountingOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			out.write(b);
+			mCount++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			out.write(b, off, len);
+			mCount += len;
+		}
+	}
+}
@@ -0,0 +1,276 @@
+/*
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.simumetadata;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.w3c.dom.Document;
+
+import de.hshannover.f4.trust.ifmapj.exception.MarshalException;
+import de.hshannover.f4.trust.ifmapj.identifier.Identifier;
+
+/**
+ * Converting the findings of a vulnerability scan into SIMU identifiers and
+ * links in parallel. Every finding yields a vulnerability identifier, an
+ * implementation identifier and the implementation-vulnerability link
+ * between them. The work is split across a {@link ForkJoinPool}; results are
+ * returned in the order of the findings.
+ *
+ * @author DECOIT GmbH
+ *
+ */
+public class ScanResultPipeline {
+
+	/**
+	 * Number of findings below which a task is not split any further
+	 */
+	private static final int MIN_CHUNK = 16;
+
+	private final SimuMetaDataFactory mFactory;
+	private final ForkJoinPool mPool;
+
+	/**
+	 * Constructor using a pool with one worker per available processor
+	 *
+	 * @param factory
+	 *            thread-safe factory, e.g. {@link SimuMetadataFactoryImpl}
+	 */
+	public ScanResultPipeline(SimuMetaDataFactory factory) {
+		this(factory, new ForkJoinPool());
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param factory
+	 *            thread-safe factory, e.g. {@link SimuMetadataFactoryImpl}
+	 * @param pool
+	 *            pool to run the conversion in
+	 */
+	public ScanResultPipeline(SimuMetaDataFactory factory, ForkJoinPool pool) {
+		mFactory = factory;
+		mPool = pool;
+	}
+
+	/**
+	 * Converting the findings of a scan
+	 *
+	 * @param findings
+	 *            findings of the scan
+	 * @return one result per finding, in the order of findings
+	 * @throws MarshalException
+	 *             if an identifier cannot be created; the remaining findings
+	 *             are skipped
+	 */
+	public List<Result> process(List<Finding> findings)
+			throws MarshalException {
+		Finding[] input = findings.toArray(new Finding[findings.size()]);
+		Result[] output = new Result[input.length];
+		AtomicReference<MarshalException> failure = new AtomicReference<MarshalException>();
+
+		int chunk = Math.max(MIN_CHUNK,
+				input.length / (mPool.getParallelism() * 8));
+		mPool.invoke(new ConvertTask(input, output, 0, input.length, chunk,
+				failure));
+
+		if (failure.get() != null) {
+			throw failure.get();
+		}
+		return Collections.unmodifiableList(Arrays.asList(output));
+	}
+
+	/**
+	 * Converting a single finding
+	 *
+	 * @param finding
+	 *            finding to convert
+	 * @return result
+	 * @throws MarshalException
+	 */
+	Result convert(Finding finding) throws MarshalException {
+		Identifier vulnerability = finding.mSeverity == null ? mFactory
+				.createVulnerability(finding.mType, finding.mId) : mFactory
+				.createVulnerability(finding.mType, finding.mId,
+						finding.mSeverity);
+		Identifier implementation = mFactory.createImplementation(
+				finding.mName, finding.mVersion, finding.mLocalVersion,
+				finding.mPlatform);
+		return new Result(finding, vulnerability, implementation,
+				mFactory.createImplementationVulnerability());
+	}
+
+	private final class ConvertTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final Finding[] mInput;
+		private final Result[] mOutput;
+		private final int mFrom;
+		private final int mTo;
+		private final int mChunk;
+		private final AtomicReference<MarshalException> mFailure;
+
+		ConvertTask(Finding[] input, Result[] output, int from, int to,
+				int chunk, AtomicReference<MarshalException> failure) {
+			mInput = input;
+			mOutput = output;
+			mFrom = from;
+			mTo = to;
+			mChunk = chunk;
+			mFailure = failure;
+		}
+
+		@Override
+		protected void compute() {
+			if (mTo - mFrom > mChunk) {
+				int mid = (mFrom + mTo) >>> 1;
+				invokeAll(new ConvertTask(mInput, mOutput, mFrom, mid, mChunk,
+						mFailure), new ConvertTask(mInput, mOutput, mid, mTo,
+						mChunk, mFailure));
+				return;
+			}
+			for (int i = mFrom; i < mTo && mFailure.get() == null; i++) {
+				try {
+					mOutput[i] = convert(mInput[i]);
+				} catch (MarshalException e) {
+					mFailure.compareAndSet(null, e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * A single finding of a vulnerability scan: the vulnerability and the
+	 * implementation it was found in
+	 */
+	public static final class Finding {
+		private final String mType;
+		private final String mId;
+		private final Float mSeverity;
+		private final String mName;
+		private final String mVersion;
+		private final String mLocalVersion;
+		private final String mPlatform;
+
+		/**
+		 * Constructor
+		 *
+		 * @param type
+		 *            Type of Vulnerability (For example CVE)
+		 * @param id
+		 *            ID of Vulnerability (For example a CVE-ID)
+		 * @param severity
+		 *            severity of the Vulnerability (Optional)
+		 * @param name
+		 *            Name of the Software
+		 * @param version
+		 *            Softwareversion, defined by the developer
+		 * @param localVersion
+		 *            local version of the Software (Optional)
+		 * @param platform
+		 *            Targetplatform (Optional)
+		 */
+		public Finding(String type, String id, Float severity, String name,
+				String version, String localVersion, String platform) {
+			mType = type;
+			mId = id;
+			mSeverity = severity;
+			mName = name;
+			mVersion = version;
+			mLocalVersion = localVersion;
+			mPlatform = platform;
+		}
+
+		public String getType() {
+			return mType;
+		}
+
+		public String getId() {
+			return mId;
+		}
+
+		public Float getSeverity() {
+			return mSeverity;
+		}
+
+		public String getName() {
+			return mName;
+		}
+
+		public String getVersion() {
+			return mVersion;
+		}
+
+		public String getLocalVersion() {
+			return mLocalVersion;
+		}
+
+		public String getPlatform() {
+			return mPlatform;
+		}
+	}
+
+	/**
+	 * IF-MAP elements created for one finding
+	 */
+	public static final class Result {
+		private final Finding mFinding;
+		private final Identifier mVulnerability;
+		private final Identifier mImplementation;
+		private final Document mImplementationVulnerability;
+
+		Result(Finding finding, Identifier vulnerability,
+				Identifier implementation, Document implementationVulnerability) {
+			mFinding = finding;
+			mVulnerability = vulnerability;
+			mImplementation = implementation;
+			mImplementationVulnerability = implementationVulnerability;
+		}
+
+		/**
+		 * @return finding the result was created from
+		 */
+		public Finding getFinding() {
+			return mFinding;
+		}
+
+		/**
+		 * @return vulnerability identifier
+		 */
+		public Identifier getVulnerability() {
+			return mVulnerability;
+		}
+
+		/**
+		 * @return implementation identifier
+		 */
+		public Identifier getImplementation() {
+			return mImplementation;
+		}
+
+		/**
+		 * @return implementation-vulnerability link metadatum
+		 */
+		public Document getImplementationVulnerability() {
+			return mImplementationVulnerability;
+		}
+	}
+}
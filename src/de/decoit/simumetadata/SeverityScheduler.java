@@ -0,0 +1,274 @@
+/*
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.simumetadata;
+
+import java.util.Collection;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded stage handing out pending items, e.g. attack-detected metadata or
+ * vulnerability identifiers, by severity instead of arrival order. Items are
+ * kept in one lock-free FIFO queue per severity level 0 to 10; severities are
+ * rounded down and clamped, a missing severity counts as 0.
+ *
+ * To keep low severities from starving, an item rises by one level for every
+ * aging interval it waits. A poll takes the head of the level with the
+ * highest effective severity; on a tie the higher original level wins.
+ *
+ * Producers never block. {@link #offer(Object, Float)} fails once capacity
+ * items are pending, so the caller decides whether to drop, retry or spool.
+ * Consumers poll without blocking or wait with a timeout.
+ *
+ * @param <T>
+ *            type of the scheduled items
+ *
+ * @author DECOIT GmbH
+ *
+ */
+public class SeverityScheduler<T> {
+
+	/**
+	 * Number of severity levels
+	 */
+	public static final int LEVELS = 11;
+
+	private final ConcurrentLinkedQueue<Entry<T>>[] mLevels;
+	private final int mCapacity;
+	private final long mAgingNanos;
+	private final AtomicInteger mSize = new AtomicInteger();
+	private final AtomicInteger mWaiting = new AtomicInteger();
+	private final AtomicLong mRejected = new AtomicLong();
+	private final ReentrantLock mLock = new ReentrantLock();
+	private final Condition mNotEmpty = mLock.newCondition();
+
+	/**
+	 * Constructor
+	 *
+	 * @param capacity
+	 *            maximum number of pending items
+	 * @param aging
+	 *            waiting time raising an item by one severity level
+	 * @param unit
+	 *            unit of aging
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public SeverityScheduler(int capacity, long aging, TimeUnit unit) {
+		if (capacity < 1) {
+			throw new IllegalArgumentException("capacity must be positive");
+		}
+		if (aging <= 0) {
+			throw new IllegalArgumentException("aging must be positive");
+		}
+		mCapacity = capacity;
+		mAgingNanos = unit.toNanos(aging);
+		mLevels = new ConcurrentLinkedQueue[LEVELS];
+		for (int i = 0; i < LEVELS; i++) {
+			mLevels[i] = new ConcurrentLinkedQueue<Entry<T>>();
+		}
+	}
+
+	/**
+	 * Adding an item
+	 *
+	 * @param item
+	 *            item to schedule
+	 * @param severity
+	 *            severity of the item, null if unknown
+	 * @return false if capacity items are pending
+	 */
+	public boolean offer(T item, Float severity) {
+		return offer(item, severity == null ? 0f : severity.floatValue());
+	}
+
+	/**
+	 * Adding an item
+	 *
+	 * @param item
+	 *            item to schedule
+	 * @param severity
+	 *            severity of the item
+	 * @return false if capacity items are pending
+	 */
+	public boolean offer(T item, float severity) {
+		if (item == null) {
+			throw new NullPointerException("item must not be null");
+		}
+		int size;
+		do {
+			size = mSize.get();
+			if (size >= mCapacity) {
+				mRejected.incrementAndGet();
+				return false;
+			}
+		} while (!mSize.compareAndSet(size, size + 1));
+
+		int level = level(severity);
+		mLevels[level].offer(new Entry<T>(item, level, System.nanoTime()));
+		if (mWaiting.get() > 0) {
+			mLock.lock();
+			try {
+				mNotEmpty.signal();
+			} finally {
+				mLock.unlock();
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Taking the most urgent item
+	 *
+	 * @return item or null if none is pending
+	 */
+	public T poll() {
+		while (mSize.get() > 0) {
+			ConcurrentLinkedQueue<Entry<T>> queue = mostUrgent(System
+					.nanoTime());
+			if (queue == null) {
+				// an offer has reserved its slot but not queued yet
+				Thread.yield();
+				continue;
+			}
+			Entry<T> e = queue.poll();
+			if (e != null) {
+				mSize.decrementAndGet();
+				return e.mItem;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Taking the most urgent item, waiting if none is pending
+	 *
+	 * @param timeout
+	 *            maximum time to wait
+	 * @param unit
+	 *            unit of timeout
+	 * @return item or null if none became available in time
+	 * @throws InterruptedException
+	 */
+	public T poll(long timeout, TimeUnit unit) throws InterruptedException {
+		T item = poll();
+		if (item != null) {
+			return item;
+		}
+		long nanos = unit.toNanos(timeout);
+		mWaiting.incrementAndGet();
+		mLock.lockInterruptibly();
+		try {
+			while ((item = poll()) == null) {
+				if (nanos <= 0) {
+					return null;
+				}
+				nanos = mNotEmpty.awaitNanos(nanos);
+			}
+			return item;
+		} finally {
+			mLock.unlock();
+			mWaiting.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Moving the most urgent items to a collection, most urgent first
+	 *
+	 * @param target
+	 *            collection to add to
+	 * @param max
+	 *            maximum number of items
+	 * @return number of items moved
+	 */
+	public int drainTo(Collection<? super T> target, int max) {
+		int n = 0;
+		T item;
+		while (n < max && (item = poll()) != null) {
+			target.add(item);
+			n++;
+		}
+		return n;
+	}
+
+	/**
+	 * @return number of pending items
+	 */
+	public int size() {
+		return mSize.get();
+	}
+
+	/**
+	 * @param level
+	 *            severity level, 0 to {@link #LEVELS} - 1
+	 * @return number of pending items of the level, counted by traversal
+	 */
+	public int size(int level) {
+		return mLevels[level].size();
+	}
+
+	/**
+	 * @return number of offers rejected because capacity items were pending
+	 */
+	public long getRejectedCount() {
+		return mRejected.get();
+	}
+
+	/**
+	 * @return the queue whose head has the highest effective severity, null
+	 *         if all are empty
+	 */
+	private ConcurrentLinkedQueue<Entry<T>> mostUrgent(long now) {
+		ConcurrentLinkedQueue<Entry<T>> best = null;
+		long bestPriority = Long.MIN_VALUE;
+		for (int i = LEVELS - 1; i >= 0; i--) {
+			Entry<T> head = mLevels[i].peek();
+			if (head == null) {
+				continue;
+			}
+			long priority = head.mLevel + (now - head.mTime) / mAgingNanos;
+			if (priority > bestPriority) {
+				best = mLevels[i];
+				bestPriority = priority;
+			}
+		}
+		return best;
+	}
+
+	private static int level(float severity) {
+		if (!(severity > 0)) {
+			// negative or NaN
+			return 0;
+		}
+		return severity >= LEVELS - 1 ? LEVELS - 1 : (int) severity;
+	}
+
+	private static final class Entry<T> {
+		final T mItem;
+		final int mLevel;
+		final long mTime;
+
+		Entry(T item, int level, long time) {
+			mItem = item;
+			mLevel = level;
+			mTime = time;
+		}
+	}
+}
@@ -0,0 +1,574 @@
+/*
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.simumetadata;
+
+import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+import de.hshannover.f4.trust.ifmapj.exception.UnmarshalException;
+
+/**
+ * Compact binary encoding of {@link SimuMetadata} and {@link SimuIdentifier}
+ * value objects for queues and spill files. A record decodes to an equal value
+ * object and therefore to the same XML.
+ *
+ * A record starts with a tag byte naming the element. Link metadata use the
+ * ordinal of their {@link SimuLink} as tag and carry nothing else. Enums are
+ * stored as one ordinal byte, ports as zigzag varints and strings as a varint
+ * UTF-8 length followed by the bytes; optional strings store the length plus
+ * one and 0 for null. Severities that are a whole number of tenths (such as
+ * CVSS scores) take a single varint, others the raw float bits. Tags are never
+ * reused, so records stay readable when elements are added.
+ *
+ * @author DECOIT GmbH
+ *
+ */
+public final class SimuBinaryCodec {
+
+	private static final int ATTACK_DETECTED = 16;
+	private static final int LOGIN_FAILURE = 17;
+	private static final int LOGIN_SUCCESS = 18;
+	private static final int FILE_STATUS = 19;
+	private static final int VULNERABILITY = 32;
+	private static final int IMPLEMENTATION = 33;
+	private static final int SERVICE = 34;
+	private static final int FILE = 35;
+
+	private static final int SEVERITY_ABSENT = 0;
+	private static final int SEVERITY_RAW = 1;
+	private static final int SEVERITY_TENTHS = 2;
+	private static final int MAX_TENTHS = 1 << 20;
+
+	private static final SimuLink[] LINKS = SimuLink.values();
+	private static final CredentialType[] CREDENTIAL_TYPES = CredentialType
+			.values();
+	private static final LoginFailureReason[] REASONS = LoginFailureReason
+			.values();
+
+	private SimuBinaryCodec() {
+	}
+
+	/**
+	 * Encode a metadatum into a new array
+	 *
+	 * @param metadata
+	 *            metadatum to encode
+	 * @return encoded record
+	 * @throws IllegalArgumentException
+	 *             if a value contains an unpaired surrogate
+	 */
+	public static byte[] encode(SimuMetadata metadata) {
+		byte[] record = new byte[encodedLength(metadata)];
+		encode(metadata, ByteBuffer.wrap(record));
+		return record;
+	}
+
+	/**
+	 * Encode a metadatum into a buffer, starting at its current position
+	 *
+	 * @param metadata
+	 *            metadatum to encode
+	 * @param buffer
+	 *            target buffer
+	 * @throws BufferOverflowException
+	 *             if the buffer is too small; its position is left unchanged
+	 * @throws IllegalArgumentException
+	 *             if a value contains an unpaired surrogate; the position is
+	 *             left unchanged
+	 */
+	public static void encode(SimuMetadata metadata, ByteBuffer buffer) {
+		int start = buffer.position();
+		try {
+			if (metadata instanceof SimuMetadata.Link) {
+				buffer.put((byte) ((SimuMetadata.Link) metadata).getLink()
+						.ordinal());
+			} else if (metadata instanceof SimuMetadata.AttackDetected) {
+				SimuMetadata.AttackDetected m = (SimuMetadata.AttackDetected) metadata;
+				buffer.put((byte) ATTACK_DETECTED);
+				putString(buffer, m.getType());
+				putString(buffer, m.getId());
+				putSeverity(buffer, m.getSeverity());
+			} else if (metadata instanceof SimuMetadata.LoginFailure) {
+				SimuMetadata.LoginFailure m = (SimuMetadata.LoginFailure) metadata;
+				buffer.put((byte) LOGIN_FAILURE);
+				buffer.put((byte) m.getCredentialType().ordinal());
+				buffer.put((byte) m.getReason().ordinal());
+				putOptionalString(buffer, m.getCredentialTypeDefinition());
+				putOptionalString(buffer, m.getReasonDefinition());
+			} else if (metadata instanceof SimuMetadata.LoginSuccess) {
+				SimuMetadata.LoginSuccess m = (SimuMetadata.LoginSuccess) metadata;
+				buffer.put((byte) LOGIN_SUCCESS);
+				buffer.put((byte) m.getCredentialType().ordinal());
+				putOptionalString(buffer, m.getCredentialTypeDefinition());
+			} else {
+				SimuMetadata.FileStatus m = (SimuMetadata.FileStatus) metadata;
+				buffer.put((byte) FILE_STATUS);
+				putString(buffer, m.getStatus());
+				putString(buffer, m.getDiscoveredTime());
+				putString(buffer, m.getImportance());
+			}
+		} catch (BufferOverflowException | IllegalArgumentException e) {
+			buffer.position(start);
+			throw e;
+		}
+	}
+
+	/**
+	 * Encode an identifier into a new array
+	 *
+	 * @param identifier
+	 *            identifier to encode
+	 * @return encoded record
+	 * @throws IllegalArgumentException
+	 *             if a value contains an unpaired surrogate
+	 */
+	public static byte[] encode(SimuIdentifier identifier) {
+		byte[] record = new byte[encodedLength(identifier)];
+		encode(identifier, ByteBuffer.wrap(record));
+		return record;
+	}
+
+	/**
+	 * Encode an identifier into a buffer, starting at its current position
+	 *
+	 * @param identifier
+	 *            identifier to encode
+	 * @param buffer
+	 *            target buffer
+	 * @throws BufferOverflowException
+	 *             if the buffer is too small; its position is left unchanged
+	 * @throws IllegalArgumentException
+	 *             if a value contains an unpaired surrogate; the position is
+	 *             left unchanged
+	 */
+	public static void encode(SimuIdentifier identifier, ByteBuffer buffer) {
+		int start = buffer.position();
+		try {
+			if (identifier instanceof SimuIdentifier.Vulnerability) {
+				SimuIdentifier.Vulnerability i = (SimuIdentifier.Vulnerability) identifier;
+				buffer.put((byte) VULNERABILITY);
+				putString(buffer, i.getType());
+				putString(buffer, i.getId());
+				putSeverity(buffer, i.getSeverity());
+			} else if (identifier instanceof SimuIdentifier.Implementation) {
+				SimuIdentifier.Implementation i = (SimuIdentifier.Implementation) identifier;
+				buffer.put((byte) IMPLEMENTATION);
+				putString(buffer, i.getName());
+				putString(buffer, i.getVersion());
+				putOptionalString(buffer, i.getLocalVersion());
+				putOptionalString(buffer, i.getPlatform());
+			} else if (identifier instanceof SimuIdentifier.Service) {
+				SimuIdentifier.Service i = (SimuIdentifier.Service) identifier;
+				buffer.put((byte) SERVICE);
+				putString(buffer, i.getType());
+				putString(buffer, i.getName());
+				putVarint(buffer, zigzag(i.getPort()));
+				putString(buffer, i.getAdministrativeDomain());
+			} else {
+				SimuIdentifier.FileIdentifier i = (SimuIdentifier.FileIdentifier) identifier;
+				buffer.put((byte) FILE);
+				putString(buffer, i.getPath());
+				putString(buffer, i.getAdministrativeDomain());
+			}
+		} catch (BufferOverflowException | IllegalArgumentException e) {
+			buffer.position(start);
+			throw e;
+		}
+	}
+
+	/**
+	 * @param metadata
+	 *            metadatum to measure
+	 * @return number of bytes {@link #encode(SimuMetadata)} produces
+	 * @throws IllegalArgumentException
+	 *             if a value contains an unpaired surrogate
+	 */
+	public static int encodedLength(SimuMetadata metadata) {
+		if (metadata instanceof SimuMetadata.Link) {
+			return 1;
+		} else if (metadata instanceof SimuMetadata.AttackDetected) {
+			SimuMetadata.AttackDetected m = (SimuMetadata.AttackDetected) metadata;
+			return 1 + stringLength(m.getType()) + stringLength(m.getId())
+					+ severityLength(m.getSeverity());
+		} else if (metadata instanceof SimuMetadata.LoginFailure) {
+			SimuMetadata.LoginFailure m = (SimuMetadata.LoginFailure) metadata;
+			return 3 + optionalStringLength(m.getCredentialTypeDefinition())
+					+ optionalStringLength(m.getReasonDefinition());
+		} else if (metadata instanceof SimuMetadata.LoginSuccess) {
+			SimuMetadata.LoginSuccess m = (SimuMetadata.LoginSuccess) metadata;
+			return 2 + optionalStringLength(m.getCredentialTypeDefinition());
+		} else {
+			SimuMetadata.FileStatus m = (SimuMetadata.FileStatus) metadata;
+			return 1 + stringLength(m.getStatus())
+					+ stringLength(m.getDiscoveredTime())
+					+ stringLength(m.getImportance());
+		}
+	}
+
+	/**
+	 * @param identifier
+	 *            identifier to measure
+	 * @return number of bytes {@link #encode(SimuIdentifier)} produces
+	 * @throws IllegalArgumentException
+	 *             if a value contains an unpaired surrogate
+	 */
+	public static int encodedLength(SimuIdentifier identifier) {
+		if (identifier instanceof SimuIdentifier.Vulnerability) {
+			SimuIdentifier.Vulnerability i = (SimuIdentifier.Vulnerability) identifier;
+			return 1 + stringLength(i.getType()) + stringLength(i.getId())
+					+ severityLength(i.getSeverity());
+		} else if (identifier instanceof SimuIdentifier.Implementation) {
+			SimuIdentifier.Implementation i = (SimuIdentifier.Implementation) identifier;
+			return 1 + stringLength(i.getName()) + stringLength(i.getVersion())
+					+ optionalStringLength(i.getLocalVersion())
+					+ optionalStringLength(i.getPlatform());
+		} else if (identifier instanceof SimuIdentifier.Service) {
+			SimuIdentifier.Service i = (SimuIdentifier.Service) identifier;
+			return 1 + stringLength(i.getType()) + stringLength(i.getName())
+					+ varintLength(zigzag(i.getPort()))
+					+ stringLength(i.getAdministrativeDomain());
+		} else {
+			SimuIdentifier.FileIdentifier i = (SimuIdentifier.FileIdentifier) identifier;
+			return 1 + stringLength(i.getPath())
+					+ stringLength(i.getAdministrativeDomain());
+		}
+	}
+
+	/**
+	 * Encode serialized metadata, e.g. as returned by getXMLString()
+	 *
+	 * @param xml
+	 *            serialized metadatum
+	 * @return encoded record
+	 * @throws UnmarshalException
+	 *             if the input is no valid SIMU metadatum
+	 */
+	public static byte[] encodeXml(String xml) throws UnmarshalException {
+		return encode(SimuMetadataReader.readMetadata(xml));
+	}
+
+	/**
+	 * Decode a metadata record, advancing the position past it
+	 *
+	 * @param buffer
+	 *            buffer positioned at the record
+	 * @return decoded metadatum
+	 * @throws UnmarshalException
+	 *             if the record is no valid metadata record; the position is
+	 *             left unchanged
+	 */
+	public static SimuMetadata decodeMetadata(ByteBuffer buffer)
+			throws UnmarshalException {
+		int start = buffer.position();
+		try {
+			int tag = buffer.get();
+			if (tag >= 0 && tag < LINKS.length) {
+				return SimuMetadata.Link.of(LINKS[tag]);
+			}
+			switch (tag) {
+			case ATTACK_DETECTED:
+				return new SimuMetadata.AttackDetected(getString(buffer),
+						getString(buffer), getSeverity(buffer));
+			case LOGIN_FAILURE:
+				return new SimuMetadata.LoginFailure(getEnum(buffer,
+						CREDENTIAL_TYPES), getEnum(buffer, REASONS),
+						getOptionalString(buffer), getOptionalString(buffer));
+			case LOGIN_SUCCESS:
+				return new SimuMetadata.LoginSuccess(getEnum(buffer,
+						CREDENTIAL_TYPES), getOptionalString(buffer));
+			case FILE_STATUS:
+				return new SimuMetadata.FileStatus(getString(buffer),
+						getString(buffer), getString(buffer));
+			default:
+				throw new UnmarshalException("unknown metadata tag " + tag);
+			}
+		} catch (BufferUnderflowException e) {
+			buffer.position(start);
+			throw new UnmarshalException("truncated metadata record");
+		} catch (UnmarshalException | RuntimeException e) {
+			buffer.position(start);
+			throw invalid(e);
+		}
+	}
+
+	/**
+	 * Decode a metadata record straight to its XML form
+	 *
+	 * @param buffer
+	 *            buffer positioned at the record
+	 * @return serialized metadatum as returned by getXMLString()
+	 * @throws UnmarshalException
+	 *             if the record is no valid metadata record; the position is
+	 *             left unchanged
+	 */
+	public static String decodeXml(ByteBuffer buffer)
+			throws UnmarshalException {
+		return decodeMetadata(buffer).toXmlString();
+	}
+
+	/**
+	 * Decode an identifier record, advancing the position past it
+	 *
+	 * @param buffer
+	 *            buffer positioned at the record
+	 * @return decoded identifier
+	 * @throws UnmarshalException
+	 *             if the record is no valid identifier record; the position is
+	 *             left unchanged
+	 */
+	public static SimuIdentifier decodeIdentifier(ByteBuffer buffer)
+			throws UnmarshalException {
+		int start = buffer.position();
+		try {
+			int tag = buffer.get();
+			switch (tag) {
+			case VULNERABILITY:
+				return new SimuIdentifier.Vulnerability(getString(buffer),
+						getString(buffer), getSeverity(buffer));
+			case IMPLEMENTATION:
+				return new SimuIdentifier.Implementation(getString(buffer),
+						getString(buffer), getOptionalString(buffer),
+						getOptionalString(buffer));
+			case SERVICE:
+				return new SimuIdentifier.Service(getString(buffer),
+						getString(buffer), unzigzag(getVarint(buffer)),
+						getString(buffer));
+			case FILE:
+				return new SimuIdentifier.FileIdentifier(getString(buffer),
+						getString(buffer));
+			default:
+				throw new UnmarshalException("unknown identifier tag " + tag);
+			}
+		} catch (BufferUnderflowException e) {
+			buffer.position(start);
+			throw new UnmarshalException("truncated identifier record");
+		} catch (UnmarshalException | RuntimeException e) {
+			buffer.position(start);
+			throw invalid(e);
+		}
+	}
+
+	private static UnmarshalException invalid(Exception e) {
+		if (e instanceof UnmarshalException) {
+			return (UnmarshalException) e;
+		}
+		return new UnmarshalException("invalid record: " + e);
+	}
+
+	private static <E extends Enum<E>> E getEnum(ByteBuffer buffer,
+			E[] values) throws UnmarshalException {
+		int ordinal = buffer.get();
+		if (ordinal < 0 || ordinal >= values.length) {
+			throw new UnmarshalException("invalid ordinal " + ordinal);
+		}
+		return values[ordinal];
+	}
+
+	private static void putSeverity(ByteBuffer buffer, Float severity) {
+		if (severity == null) {
+			buffer.put((byte) SEVERITY_ABSENT);
+			return;
+		}
+		int tenths = tenths(severity);
+		if (tenths >= 0) {
+			putVarint(buffer, SEVERITY_TENTHS + tenths);
+		} else {
+			buffer.put((byte) SEVERITY_RAW);
+			buffer.putInt(Float.floatToRawIntBits(severity));
+		}
+	}
+
+	private static int severityLength(Float severity) {
+		if (severity == null) {
+			return 1;
+		}
+		int tenths = tenths(severity);
+		return tenths >= 0 ? varintLength(SEVERITY_TENTHS + tenths) : 5;
+	}
+
+	/**
+	 * @return number of tenths if the severity is restored exactly from it,
+	 *         otherwise -1
+	 */
+	private static int tenths(float severity) {
+		if (!(severity >= 0 && severity < MAX_TENTHS / 10)) {
+			return -1;
+		}
+		int tenths = Math.round(severity * 10);
+		return Float.floatToRawIntBits(tenths / 10f) == Float
+				.floatToRawIntBits(severity) ? tenths : -1;
+	}
+
+	private static Float getSeverity(ByteBuffer buffer)
+			throws UnmarshalException {
+		int v = getVarint(buffer);
+		switch (v) {
+		case SEVERITY_ABSENT:
+			return null;
+		case SEVERITY_RAW:
+			return Float.intBitsToFloat(buffer.getInt());
+		default:
+			if (v < SEVERITY_TENTHS || v - SEVERITY_TENTHS > MAX_TENTHS) {
+				throw new UnmarshalException("invalid severity " + v);
+			}
+			return (v - SEVERITY_TENTHS) / 10f;
+		}
+	}
+
+	private static void putString(ByteBuffer buffer, String s) {
+		putVarint(buffer, utf8Length(s));
+		putUtf8(buffer, s);
+	}
+
+	private static void putOptionalString(ByteBuffer buffer, String s) {
+		if (s == null) {
+			buffer.put((byte) 0);
+			return;
+		}
+		putVarint(buffer, utf8Length(s) + 1);
+		putUtf8(buffer, s);
+	}
+
+	private static int stringLength(String s) {
+		int len = utf8Length(s);
+		return varintLength(len) + len;
+	}
+
+	private static int optionalStringLength(String s) {
+		if (s == null) {
+			return 1;
+		}
+		int len = utf8Length(s);
+		return varintLength(len + 1) + len;
+	}
+
+	private static String getString(ByteBuffer buffer)
+			throws UnmarshalException {
+		return getUtf8(buffer, getVarint(buffer));
+	}
+
+	private static String getOptionalString(ByteBuffer buffer)
+			throws UnmarshalException {
+		int len = getVarint(buffer);
+		return len == 0 ? null : getUtf8(buffer, len - 1);
+	}
+
+	private static String getUtf8(ByteBuffer buffer, int len)
+			throws UnmarshalException {
+		if (len < 0 || len > buffer.remaining()) {
+			throw new BufferUnderflowException();
+		}
+		if (buffer.hasArray()) {
+			int pos = buffer.position();
+			buffer.position(pos + len);
+			return new String(buffer.array(), buffer.arrayOffset() + pos, len,
+					XmlFragment.UTF8);
+		}
+		byte[] bytes = new byte[len];
+		buffer.get(bytes);
+		return new String(bytes, XmlFragment.UTF8);
+	}
+
+	private static int utf8Length(String s) {
+		int len = s.length();
+		int bytes = len;
+		for (int i = 0; i < len; i++) {
+			char c = s.charAt(i);
+			if (c >= 0x80) {
+				if (c < 0x800) {
+					bytes++;
+				} else if (Character.isHighSurrogate(c) && i + 1 < len
+						&& Character.isLowSurrogate(s.charAt(i + 1))) {
+					// four bytes for two chars
+					bytes += 2;
+					i++;
+				} else if (Character.isSurrogate(c)) {
+					throw new IllegalArgumentException(
+							"Invalid UTF-16 surrogate detected: "
+									+ Integer.toHexString(c));
+				} else {
+					bytes += 2;
+				}
+			}
+		}
+		return bytes;
+	}
+
+	/**
+	 * Encoding a string already checked by {@link #utf8Length(String)}
+	 */
+	private static void putUtf8(ByteBuffer buffer, String s) {
+		int len = s.length();
+		for (int i = 0; i < len; i++) {
+			char c = s.charAt(i);
+			if (c < 0x80) {
+				buffer.put((byte) c);
+			} else if (c < 0x800) {
+				buffer.put((byte) (0xC0 | c >> 6));
+				buffer.put((byte) (0x80 | c & 0x3F));
+			} else if (Character.isHighSurrogate(c)) {
+				int cp = Character.toCodePoint(c, s.charAt(++i));
+				buffer.put((byte) (0xF0 | cp >> 18));
+				buffer.put((byte) (0x80 | cp >> 12 & 0x3F));
+				buffer.put((byte) (0x80 | cp >> 6 & 0x3F));
+				buffer.put((byte) (0x80 | cp & 0x3F));
+			} else {
+				buffer.put((byte) (0xE0 | c >> 12));
+				buffer.put((byte) (0x80 | c >> 6 & 0x3F));
+				buffer.put((byte) (0x80 | c & 0x3F));
+			}
+		}
+	}
+
+	private static void putVarint(ByteBuffer buffer, int v) {
+		while ((v & ~0x7F) != 0) {
+			buffer.put((byte) (v & 0x7F | 0x80));
+			v >>>= 7;
+		}
+		buffer.put((byte) v);
+	}
+
+	private static int varintLength(int v) {
+		int len = 1;
+		while ((v & ~0x7F) != 0) {
+			len++;
+			v >>>= 7;
+		}
+		return len;
+	}
+
+	private static int getVarint(ByteBuffer buffer) throws UnmarshalException {
+		int v = 0;
+		for (int shift = 0; shift < 35; shift += 7) {
+			byte b = buffer.get();
+			v |= (b & 0x7F) << shift;
+			if (b >= 0) {
+				return v;
+			}
+		}
+		throw new UnmarshalException("varint too long");
+	}
+
+	private static int zigzag(int v) {
+		return v << 1 ^ v >> 31;
+	}
+
+	private static int unzigzag(int v) {
+		return v >>> 1 ^ -(v & 1);
+	}
+}
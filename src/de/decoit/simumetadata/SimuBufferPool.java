@@ -0,0 +1,110 @@
+/*
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.simumetadata;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lock-free pool of equally sized byte buffers for serialized metadata.
+ * Direct buffers can be written to a channel without another copy, so
+ * metadata encoded into them by {@link SimuXmlSerializer} or
+ * {@link SimuMetadataWriter} reach the socket without any intermediate String
+ * or byte array.
+ *
+ * @author DECOIT GmbH
+ *
+ */
+public class SimuBufferPool {
+
+	private final int mBufferSize;
+	private final int mMaxPooled;
+	private final boolean mDirect;
+	private final ConcurrentLinkedQueue<ByteBuffer> mIdle = new ConcurrentLinkedQueue<ByteBuffer>();
+	private final AtomicInteger mIdleCount = new AtomicInteger();
+
+	/**
+	 * Constructor
+	 *
+	 * @param bufferSize
+	 *            capacity of every buffer in bytes
+	 * @param maxPooled
+	 *            maximum number of idle buffers kept for reuse
+	 * @param direct
+	 *            true to allocate direct buffers
+	 */
+	public SimuBufferPool(int bufferSize, int maxPooled, boolean direct) {
+		if (bufferSize < 1 || maxPooled < 0) {
+			throw new IllegalArgumentException("bad pool dimensions given");
+		}
+		mBufferSize = bufferSize;
+		mMaxPooled = maxPooled;
+		mDirect = direct;
+	}
+
+	/**
+	 * Taking a cleared buffer from the pool, allocating a new one if the pool
+	 * is empty
+	 *
+	 * @return buffer with position 0 and limit equal to its capacity
+	 */
+	public ByteBuffer acquire() {
+		ByteBuffer buffer = mIdle.poll();
+		if (buffer == null) {
+			return mDirect ? ByteBuffer.allocateDirect(mBufferSize)
+					: ByteBuffer.allocate(mBufferSize);
+		}
+		mIdleCount.decrementAndGet();
+		buffer.clear();
+		return buffer;
+	}
+
+	/**
+	 * Handing a buffer back. Buffers not created by this pool and buffers
+	 * exceeding the idle limit are dropped. The buffer must not be used
+	 * afterwards.
+	 *
+	 * @param buffer
+	 *            buffer obtained from {@link #acquire()}
+	 */
+	public void release(ByteBuffer buffer) {
+		if (buffer.capacity() != mBufferSize || buffer.isDirect() != mDirect
+				|| buffer.isReadOnly()) {
+			return;
+		}
+		if (mIdleCount.incrementAndGet() > mMaxPooled) {
+			mIdleCount.decrementAndGet();
+			return;
+		}
+		mIdle.offer(buffer);
+	}
+
+	/**
+	 * @return capacity of the pooled buffers
+	 */
+	public int getBufferSize() {
+		return mBufferSize;
+	}
+
+	/**
+	 * @return true if the pool hands out direct buffers
+	 */
+	public boolean isDirect() {
+		return mDirect;
+	}
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.simumetadata;
+
+import static de.decoit.simumetadata.SimuMetaDataFactory.SIMU_METADATA_PREFIX;
+import static de.decoit.simumetadata.SimuMetaDataFactory.SIMU_METADATA_URI;
+
+import de.hshannover.f4.trust.ifmapj.metadata.Cardinality;
+
+/**
+ * Schema of the SIMU metadata with values and of the SIMU extended
+ * identifiers. This is the one definition of element and field names the
+ * factory, {@link SimuMetadataWriter} and {@link SimuMetadataReader} work
+ * from. Fields are listed in document order: metadata carry them as child
+ * elements, identifiers as attributes. Fields required only for the credential
+ * type or reason OTHER are optional here.
+ *
+ * The markup of every metadatum start and end tag and of every field element
+ * is serialized once when the class is loaded. The parameterless links are
+ * described by {@link SimuLink}.
+ *
+ * @author DECOIT GmbH
+ *
+ */
+public enum SimuElement {
+	ATTACK_DETECTED(true, "attack-detected", 0x3, "type", "id", "severity"), LOGIN_FAILURE(
+			true, "login-failure", 0x3, "credential-type", "reason",
+			"other-credential-type-definition", "other-reason-type-definition"), LOGIN_SUCCESS(
+			true, "login-success", 0x1, "credential-type",
+			"other-credential-type-definition"), FILE_STATUS(true,
+			"file-status", 0x7, "status", "discovered-time", "importance"), VULNERABILITY(
+			false, "vulnerability", 0x3, "type", "id", "severity-score"), IMPLEMENTATION(
+			false, "implementation", 0x3, "name", "version", "local-version",
+			"platform"), SERVICE(false, "service", 0xf, "type", "name", "port",
+			"administrative-domain"), FILE(false, "file", 0x3, "path",
+			"administrative-domain");
+
+	private final boolean mMetadata;
+	private final String mName;
+	private final int mRequired;
+	private final String[] mFields;
+	private final XmlFragment mStartTag;
+	private final XmlFragment mEndTag;
+	private final XmlFragment[] mFieldStartTags;
+	private final XmlFragment[] mFieldEndTags;
+	private final XmlFragment[] mEmptyFields;
+
+	/**
+	 * Constructor
+	 * @param metadata true for a metadatum, false for an identifier
+	 * @param name local name of the element
+	 * @param required bit i set if field i is mandatory
+	 * @param fields names of the child elements or attributes
+	 */
+	private SimuElement(boolean metadata, String name, int required,
+			String... fields) {
+		mMetadata = metadata;
+		mName = name;
+		mRequired = required;
+		mFields = fields;
+		mFieldStartTags = new XmlFragment[fields.length];
+		mFieldEndTags = new XmlFragment[fields.length];
+		mEmptyFields = new XmlFragment[fields.length];
+		if (!metadata) {
+			mStartTag = null;
+			mEndTag = null;
+			return;
+		}
+		mStartTag = new XmlFragment("<" + SIMU_METADATA_PREFIX + ":" + name
+				+ " ifmap-cardinality=\"" + Cardinality.multiValue
+				+ "\" xmlns:" + SIMU_METADATA_PREFIX + "=\""
+				+ SIMU_METADATA_URI + "\">");
+		mEndTag = new XmlFragment("</" + SIMU_METADATA_PREFIX + ":" + name
+				+ ">");
+		for (int i = 0; i < fields.length; i++) {
+			mFieldStartTags[i] = new XmlFragment("<" + fields[i] + ">");
+			mFieldEndTags[i] = new XmlFragment("</" + fields[i] + ">");
+			mEmptyFields[i] = new XmlFragment("<" + fields[i] + "/>");
+		}
+	}
+
+	/**
+	 * @return local name of the element
+	 */
+	public String getName() {
+		return mName;
+	}
+
+	/**
+	 * @return true for a metadatum, false for an extended identifier
+	 */
+	public boolean isMetadata() {
+		return mMetadata;
+	}
+
+	/**
+	 * @return cardinality of the metadatum, always multiValue; null for
+	 *         identifiers
+	 */
+	public Cardinality getCardinality() {
+		return mMetadata ? Cardinality.multiValue : null;
+	}
+
+	/**
+	 * @return number of fields
+	 */
+	public int getFieldCount() {
+		return mFields.length;
+	}
+
+	/**
+	 * @param field
+	 *            index of the field in document order
+	 * @return name of the child element or attribute
+	 */
+	public String getFieldName(int field) {
+		return mFields[field];
+	}
+
+	/**
+	 * @param field
+	 *            index of the field in document order
+	 * @return true if the field must always be present
+	 */
+	public boolean isRequired(int field) {
+		return (mRequired & 1 << field) != 0;
+	}
+
+	/**
+	 * Looking up the field index by name
+	 *
+	 * @param name
+	 *            name of the child element or attribute
+	 * @return index or -1 if the element has no such field
+	 */
+	public int indexOf(String name) {
+		for (int i = 0; i < mFields.length; i++) {
+			if (mFields[i].equals(name)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Looking up an element by kind and local name
+	 *
+	 * @param metadata
+	 *            true to look up a metadatum, false for an identifier
+	 * @param name
+	 *            local name of the element
+	 * @return matching constant or null
+	 */
+	public static SimuElement forName(boolean metadata, String name) {
+		for (SimuElement e : values()) {
+			if (e.mMetadata == metadata && e.mName.equals(name)) {
+				return e;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Checking a mandatory value, using the message of the DOM factory
+	 *
+	 * @param field
+	 *            index of the field
+	 * @param value
+	 *            value to check
+	 */
+	void checkNotNull(int field, Object value) {
+		if (value == null) {
+			throw new NullPointerException("null is not allowed for "
+					+ mFields[field] + " in " + mName);
+		}
+	}
+
+	/**
+	 * @return start tag of the metadatum including cardinality and namespace
+	 */
+	XmlFragment getStartTag() {
+		return mStartTag;
+	}
+
+	/**
+	 * @return end tag of the metadatum
+	 */
+	XmlFragment getEndTag() {
+		return mEndTag;
+	}
+
+	/**
+	 * @return start tag of the field element
+	 */
+	XmlFragment getFieldStartTag(int field) {
+		return mFieldStartTags[field];
+	}
+
+	/**
+	 * @return end tag of the field element
+	 */
+	XmlFragment getFieldEndTag(int field) {
+		return mFieldEndTags[field];
+	}
+
+	/**
+	 * @return field element without content
+	 */
+	XmlFragment getEmptyField(int field) {
+		return mEmptyFields[field];
+	}
+}
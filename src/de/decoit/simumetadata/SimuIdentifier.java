@@ -0,0 +1,404 @@
+/*
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.simumetadata;
+
+import java.util.Objects;
+
+import de.hshannover.f4.trust.ifmapj.exception.MarshalException;
+import de.hshannover.f4.trust.ifmapj.identifier.Identifier;
+
+/**
+ * Immutable value object for a SIMU extended identifier, as created by
+ * {@link SimuMetaDataFactory} and read by {@link SimuMetadataReader}. The
+ * subclasses are nested and compare by value.
+ *
+ * @author DECOIT GmbH
+ *
+ */
+public abstract class SimuIdentifier {
+
+	SimuIdentifier() {
+	}
+
+	/**
+	 * @return local name of the identifier element
+	 */
+	public abstract String getElementName();
+
+	/**
+	 * Building the ifmapj form of the identifier
+	 *
+	 * @param factory
+	 *            factory to create the identifier with
+	 * @return extended identifier
+	 * @throws MarshalException
+	 */
+	public abstract Identifier toIdentifier(SimuMetaDataFactory factory)
+			throws MarshalException;
+
+	/**
+	 * vulnerability identifier
+	 */
+	public static final class Vulnerability extends SimuIdentifier {
+		private final String mType;
+		private final String mId;
+		private final Float mSeverity;
+
+		/**
+		 * Constructor
+		 *
+		 * @param type
+		 *            vulnerability type, e.g. CVE
+		 * @param id
+		 *            vulnerability id
+		 * @param severity
+		 *            severity score, null if not given
+		 */
+		public Vulnerability(String type, String id, Float severity) {
+			SimuElement.VULNERABILITY.checkNotNull(0, type);
+			SimuElement.VULNERABILITY.checkNotNull(1, id);
+			mType = type;
+			mId = id;
+			mSeverity = severity;
+		}
+
+		/**
+		 * @return vulnerability type
+		 */
+		public String getType() {
+			return mType;
+		}
+
+		/**
+		 * @return vulnerability id
+		 */
+		public String getId() {
+			return mId;
+		}
+
+		/**
+		 * @return severity score, null if not given
+		 */
+		public Float getSeverity() {
+			return mSeverity;
+		}
+
+		@Override
+		public String getElementName() {
+			return SimuElement.VULNERABILITY.getName();
+		}
+
+		@Override
+		public Identifier toIdentifier(SimuMetaDataFactory factory)
+				throws MarshalException {
+			return mSeverity == null ? factory.createVulnerability(mType, mId)
+					: factory.createVulnerability(mType, mId, mSeverity);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof Vulnerability)) {
+				return false;
+			}
+			Vulnerability other = (Vulnerability) obj;
+			return mType.equals(other.mType) && mId.equals(other.mId)
+					&& Objects.equals(mSeverity, other.mSeverity);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(mType, mId, mSeverity);
+		}
+
+		@Override
+		public String toString() {
+			return "Vulnerability[type=" + mType + ", id=" + mId
+					+ ", severity-score=" + mSeverity + "]";
+		}
+	}
+
+	/**
+	 * implementation identifier
+	 */
+	public static final class Implementation extends SimuIdentifier {
+		private final String mName;
+		private final String mVersion;
+		private final String mLocalVersion;
+		private final String mPlatform;
+
+		/**
+		 * Constructor
+		 *
+		 * @param name
+		 *            product name
+		 * @param version
+		 *            product version
+		 * @param localVersion
+		 *            local version, null if not given
+		 * @param platform
+		 *            platform, null if not given
+		 */
+		public Implementation(String name, String version,
+				String localVersion, String platform) {
+			SimuElement.IMPLEMENTATION.checkNotNull(0, name);
+			SimuElement.IMPLEMENTATION.checkNotNull(1, version);
+			mName = name;
+			mVersion = version;
+			mLocalVersion = localVersion;
+			mPlatform = platform;
+		}
+
+		/**
+		 * @return product name
+		 */
+		public String getName() {
+			return mName;
+		}
+
+		/**
+		 * @return product version
+		 */
+		public String getVersion() {
+			return mVersion;
+		}
+
+		/**
+		 * @return local version, null if not given
+		 */
+		public String getLocalVersion() {
+			return mLocalVersion;
+		}
+
+		/**
+		 * @return platform, null if not given
+		 */
+		public String getPlatform() {
+			return mPlatform;
+		}
+
+		@Override
+		public String getElementName() {
+			return SimuElement.IMPLEMENTATION.getName();
+		}
+
+		@Override
+		public Identifier toIdentifier(SimuMetaDataFactory factory)
+				throws MarshalException {
+			return factory.createImplementation(mName, mVersion,
+					mLocalVersion, mPlatform);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof Implementation)) {
+				return false;
+			}
+			Implementation other = (Implementation) obj;
+			return mName.equals(other.mName) && mVersion.equals(other.mVersion)
+					&& Objects.equals(mLocalVersion, other.mLocalVersion)
+					&& Objects.equals(mPlatform, other.mPlatform);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(mName, mVersion, mLocalVersion, mPlatform);
+		}
+
+		@Override
+		public String toString() {
+			return "Implementation[name=" + mName + ", version=" + mVersion
+					+ ", local-version=" + mLocalVersion + ", platform="
+					+ mPlatform + "]";
+		}
+	}
+
+	/**
+	 * service identifier
+	 */
+	public static final class Service extends SimuIdentifier {
+		private final String mType;
+		private final String mName;
+		private final int mPort;
+		private final String mAdministrativeDomain;
+
+		/**
+		 * Constructor
+		 *
+		 * @param type
+		 *            service type
+		 * @param name
+		 *            service name
+		 * @param port
+		 *            service port
+		 * @param ad
+		 *            administrative domain
+		 */
+		public Service(String type, String name, int port, String ad) {
+			SimuElement.SERVICE.checkNotNull(0, type);
+			SimuElement.SERVICE.checkNotNull(1, name);
+			SimuElement.SERVICE.checkNotNull(3, ad);
+			mType = type;
+			mName = name;
+			mPort = port;
+			mAdministrativeDomain = ad;
+		}
+
+		/**
+		 * @return service type
+		 */
+		public String getType() {
+			return mType;
+		}
+
+		/**
+		 * @return service name
+		 */
+		public String getName() {
+			return mName;
+		}
+
+		/**
+		 * @return service port
+		 */
+		public int getPort() {
+			return mPort;
+		}
+
+		/**
+		 * @return administrative domain
+		 */
+		public String getAdministrativeDomain() {
+			return mAdministrativeDomain;
+		}
+
+		@Override
+		public String getElementName() {
+			return SimuElement.SERVICE.getName();
+		}
+
+		@Override
+		public Identifier toIdentifier(SimuMetaDataFactory factory)
+				throws MarshalException {
+			return factory.createService(mType, mName, mPort,
+					mAdministrativeDomain);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof Service)) {
+				return false;
+			}
+			Service other = (Service) obj;
+			return mPort == other.mPort && mType.equals(other.mType)
+					&& mName.equals(other.mName)
+					&& mAdministrativeDomain.equals(other.mAdministrativeDomain);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(mType, mName, mPort, mAdministrativeDomain);
+		}
+
+		@Override
+		public String toString() {
+			return "Service[type=" + mType + ", name=" + mName + ", port="
+					+ mPort + ", administrative-domain="
+					+ mAdministrativeDomain + "]";
+		}
+	}
+
+	/**
+	 * file identifier
+	 */
+	public static final class FileIdentifier extends SimuIdentifier {
+		private final String mPath;
+		private final String mAdministrativeDomain;
+
+		/**
+		 * Constructor
+		 *
+		 * @param path
+		 *            file path
+		 * @param ad
+		 *            administrative domain
+		 */
+		public FileIdentifier(String path, String ad) {
+			SimuElement.FILE.checkNotNull(0, path);
+			SimuElement.FILE.checkNotNull(1, ad);
+			mPath = path;
+			mAdministrativeDomain = ad;
+		}
+
+		/**
+		 * @return file path
+		 */
+		public String getPath() {
+			return mPath;
+		}
+
+		/**
+		 * @return administrative domain
+		 */
+		public String getAdministrativeDomain() {
+			return mAdministrativeDomain;
+		}
+
+		@Override
+		public String getElementName() {
+			return SimuElement.FILE.getName();
+		}
+
+		@Override
+		public Identifier toIdentifier(SimuMetaDataFactory factory)
+				throws MarshalException {
+			return factory.createFileIdentifier(mPath, mAdministrativeDomain);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof FileIdentifier)) {
+				return false;
+			}
+			FileIdentifier other = (FileIdentifier) obj;
+			return mPath.equals(other.mPath)
+					&& mAdministrativeDomain.equals(other.mAdministrativeDomain);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(mPath, mAdministrativeDomain);
+		}
+
+		@Override
+		public String toString() {
+			return "FileIdentifier[path=" + mPath + ", administrative-domain="
+					+ mAdministrativeDomain + "]";
+		}
+	}
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.simumetadata;
+
+import java.nio.ByteBuffer;
+
+import org.w3c.dom.Document;
+
+import de.hshannover.f4.trust.ifmapj.metadata.Cardinality;
+
+/**
+ * Enum for the parameterless SIMU link metadata. Every constant carries its
+ * serialized form, built once when the class is loaded.
+ *
+ * @author DECOIT GmbH
+ *
+ */
+public enum SimuLink {
+	IDENTIFIES_AS("identifies-as"), SERVICE_IP("service-ip"), SERVICE_DISCOVERED_BY(
+			"service-discovered-by"), DEVICE_DISCOVERED_BY(
+			"device-discovered-by"), IMPLEMENTATION_VULNERABILITY(
+			"implementation-vulnerability"), SERVICE_IMPLEMENTATION(
+			"service-implementation"), FILE_MONITORED("file-monitored");
+
+	private final String mElementName;
+	private final XmlFragment mXml;
+
+	/**
+	 * Constructor
+	 * @param elementName local name of the metadata element
+	 */
+	private SimuLink(String elementName) {
+		mElementName = elementName;
+		mXml = new XmlFragment("<" + SimuMetaDataFactory.SIMU_METADATA_PREFIX
+				+ ":" + elementName + " ifmap-cardinality=\""
+				+ Cardinality.singleValue + "\" xmlns:"
+				+ SimuMetaDataFactory.SIMU_METADATA_PREFIX + "=\""
+				+ SimuMetaDataFactory.SIMU_METADATA_URI + "\"/>");
+	}
+
+	/**
+	 * @return local name of the metadata element
+	 */
+	public String getElementName() {
+		return mElementName;
+	}
+
+	/**
+	 * @return cardinality of the metadatum, always singleValue
+	 */
+	public Cardinality getCardinality() {
+		return Cardinality.singleValue;
+	}
+
+	/**
+	 * Creating the document of this link with any factory. Uses
+	 * {@link SimuMetaDataFactoryExtension#createLink(SimuLink)} if the factory
+	 * provides it, the matching parameterless create method otherwise.
+	 *
+	 * @param factory
+	 *            factory to create the document with
+	 * @return simu metadata document of the link
+	 */
+	public Document createDocument(SimuMetaDataFactory factory) {
+		if (factory instanceof SimuMetaDataFactoryExtension) {
+			return ((SimuMetaDataFactoryExtension) factory).createLink(this);
+		}
+		switch (this) {
+		case IDENTIFIES_AS:
+			return factory.createIdentifiesAs();
+		case SERVICE_IP:
+			return factory.createServiceIP();
+		case SERVICE_DISCOVERED_BY:
+			return factory.createServiceDiscoveredBy();
+		case DEVICE_DISCOVERED_BY:
+			return factory.createDeviceDiscoveredBy();
+		case IMPLEMENTATION_VULNERABILITY:
+			return factory.createImplementationVulnerability();
+		case SERVICE_IMPLEMENTATION:
+			return factory.createServiceImplementation();
+		default:
+			return factory.createFileMonitored();
+		}
+	}
+
+	/**
+	 * @return serialized metadatum as returned by getXMLString()
+	 */
+	public String toXmlString() {
+		return mXml.toString();
+	}
+
+	/**
+	 * @return read-only view of the UTF-8 encoded metadatum, positioned at 0
+	 */
+	public ByteBuffer getXmlBytes() {
+		return mXml.asByteBuffer();
+	}
+
+	/**
+	 * @return serialized metadatum
+	 */
+	XmlFragment getXmlFragment() {
+		return mXml;
+	}
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.simumetadata;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.w3c.dom.Document;
+
+import de.hshannover.f4.trust.ifmapj.exception.MarshalException;
+import de.hshannover.f4.trust.ifmapj.identifier.Identifier;
+
+/**
+ * Batch calls of {@link SimuMetaDataFactoryExtension} for any
+ * {@link SimuMetaDataFactory}. Factories implementing the extension do the
+ * work themselves, all others are called once per entry.
+ *
+ * @author DECOIT GmbH
+ *
+ */
+public final class SimuMetaDataFactories {
+
+	private SimuMetaDataFactories() {
+	}
+
+	/**
+	 * Creating fileStatus metadata for a whole scan at once
+	 * 
+	 * @param factory
+	 *            factory to create the documents with
+	 * @param kinds
+	 *            File status per entry
+	 * @param times
+	 *            discovering time per entry
+	 * @param importances
+	 *            severity of status change per entry
+	 * @return Simu:file-status metadata documents in input order
+	 * @see SimuMetaDataFactoryExtension#createFileChanged(String[], String[],
+	 *      String[])
+	 */
+	public static List<Document> createFileChanged(
+			SimuMetaDataFactory factory, String[] kinds, String[] times,
+			String[] importances) {
+		if (factory instanceof SimuMetaDataFactoryExtension) {
+			return ((SimuMetaDataFactoryExtension) factory).createFileChanged(
+					kinds, times, importances);
+		}
+		int count = SimuMetadataFactoryImpl.checkColumns(kinds.length,
+				times.length, importances.length);
+		List<Document> docs = new ArrayList<Document>(count);
+		for (int i = 0; i < count; i++) {
+			docs.add(factory.createFileChanged(kinds[i], times[i],
+					importances[i]));
+		}
+		return docs;
+	}
+
+	/**
+	 * Creating Vulnerability identities for a whole scan at once
+	 * 
+	 * @param factory
+	 *            factory to create the identifiers with
+	 * @param types
+	 *            Type of Vulnerability per entry (For example CVE)
+	 * @param ids
+	 *            ID of Vulnerability per entry (For example a CVE-ID)
+	 * @param severities
+	 *            severity of Vulnerability per entry (Optional, null to omit
+	 *            the severity for all entries)
+	 * @return Vulnerability identifiers in input order
+	 * @throws MarshalException
+	 * @see SimuMetaDataFactoryExtension#createVulnerabilities(String[],
+	 *      String[], float[])
+	 */
+	public static List<Identifier> createVulnerabilities(
+			SimuMetaDataFactory factory, String[] types, String[] ids,
+			float[] severities) throws MarshalException {
+		if (factory instanceof SimuMetaDataFactoryExtension) {
+			return ((SimuMetaDataFactoryExtension) factory)
+					.createVulnerabilities(types, ids, severities);
+		}
+		int count = severities == null ? SimuMetadataFactoryImpl.checkColumns(
+				types.length, ids.length) : SimuMetadataFactoryImpl
+				.checkColumns(types.length, ids.length, severities.length);
+		List<Identifier> identifiers = new ArrayList<Identifier>(count);
+		for (int i = 0; i < count; i++) {
+			identifiers.add(severities == null ? factory.createVulnerability(
+					types[i], ids[i]) : factory.createVulnerability(types[i],
+					ids[i], severities[i]));
+		}
+		return identifiers;
+	}
+}
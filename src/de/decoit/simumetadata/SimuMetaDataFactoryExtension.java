@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.simumetadata;
+
+import java.util.List;
+
+import org.w3c.dom.Document;
+
+import de.hshannover.f4.trust.ifmapj.exception.MarshalException;
+import de.hshannover.f4.trust.ifmapj.identifier.Identifier;
+
+/**
+ * Methods added to {@link SimuMetaDataFactory} after its first release. They
+ * are kept in this sub-interface, so implementations written against
+ * {@link SimuMetaDataFactory} keep compiling. Code holding a plain
+ * {@link SimuMetaDataFactory} reaches them through helpers such as
+ * {@link SimuLink#createDocument(SimuMetaDataFactory)} and
+ * {@link SimuMetaDataFactories}, which fall back to the original methods.
+ *
+ * @author DECOIT GmbH
+ *
+ */
+public interface SimuMetaDataFactoryExtension extends SimuMetaDataFactory {
+
+	/**
+	 * Creating one of the parameterless links. The returned document is a
+	 * fresh copy of a pre-built template; the serialized form is available
+	 * from the {@link SimuLink} constant.
+	 * 
+	 * @param link
+	 *            link to create
+	 * @return simu metadata document of the link
+	 */
+	public Document createLink(SimuLink link);
+
+	/**
+	 * Creating fileStatus metadata for a whole scan at once. All columns must
+	 * have the same length, entry i of each column describes the i-th
+	 * metadatum.
+	 * 
+	 * @param kinds
+	 *            File status per entry
+	 * @param times
+	 *            discovering time per entry
+	 * @param importances
+	 *            severity of status change per entry
+	 * @return Simu:file-status metadata documents in input order
+	 */
+	public List<Document> createFileChanged(String[] kinds, String[] times,
+			String[] importances);
+
+	/**
+	 * Creating Vulnerability identities for a whole scan at once. All columns
+	 * must have the same length, entry i of each column describes the i-th
+	 * Vulnerability.
+	 * 
+	 * @param types
+	 *            Type of Vulnerability per entry (For example CVE)
+	 * @param ids
+	 *            ID of Vulnerability per entry (For example a CVE-ID)
+	 * @param severities
+	 *            severity of Vulnerability per entry (Optional, null to omit
+	 *            the severity for all entries)
+	 * @return Vulnerability identifiers in input order
+	 * @throws MarshalException
+	 */
+	public List<Identifier> createVulnerabilities(String[] types,
+			String[] ids, float[] severities) throws MarshalException;
+}
@@ -0,0 +1,602 @@
+/*
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.simumetadata;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import de.hshannover.f4.trust.ifmapj.metadata.Cardinality;
+
+/**
+ * Immutable value object for a SIMU metadatum, as created by
+ * {@link SimuMetaDataFactory} and read by {@link SimuMetadataReader}. The
+ * subclasses are nested and compare by value.
+ *
+ * A value object only holds its fields until a representation is asked for.
+ * The serialized form is created on first use and kept; DOM documents are
+ * mutable and therefore built anew by every {@link #toDocument} call.
+ *
+ * @author DECOIT GmbH
+ *
+ */
+public abstract class SimuMetadata {
+
+	private volatile XmlFragment mXml;
+
+	SimuMetadata() {
+	}
+
+	/**
+	 * @return local name of the metadata element
+	 */
+	public abstract String getElementName();
+
+	/**
+	 * @return cardinality of the metadatum
+	 */
+	public abstract Cardinality getCardinality();
+
+	/**
+	 * Building the DOM form of the metadatum
+	 *
+	 * @param factory
+	 *            factory to create the document with
+	 * @return new document, owned by the caller
+	 */
+	public abstract Document toDocument(SimuMetaDataFactory factory);
+
+	/**
+	 * @return serialized metadatum as returned by getXMLString(), created on
+	 *         first use
+	 * @throws IllegalArgumentException
+	 *             if a value contains a character not allowed in XML, unpaired
+	 *             surrogates included
+	 */
+	public String toXmlString() {
+		return getXml().toString();
+	}
+
+	/**
+	 * @return read-only view of the UTF-8 encoded metadatum, positioned at 0
+	 *         and created on first use
+	 * @throws IllegalArgumentException
+	 *             if a value contains a character not allowed in XML, unpaired
+	 *             surrogates included
+	 */
+	public ByteBuffer toXmlBytes() {
+		return getXml().asByteBuffer();
+	}
+
+	/**
+	 * Writing the metadatum element by element
+	 */
+	abstract void write(SimuMetadataWriter writer) throws IOException;
+
+	/**
+	 * @return serialized form if it was already created, otherwise null
+	 */
+	XmlFragment getCachedXml() {
+		XmlFragment xml = mXml;
+		return xml == null ? getSharedXml() : xml;
+	}
+
+	/**
+	 * @return serialized form shared by all equal instances, null if there is
+	 *         none
+	 */
+	XmlFragment getSharedXml() {
+		return null;
+	}
+
+	XmlFragment getXml() {
+		XmlFragment xml = getCachedXml();
+		if (xml == null) {
+			// racing threads build equal fragments, any of them may win
+			StringBuilder sb = new StringBuilder(160);
+			try {
+				write(new SimuMetadataWriter(sb));
+			} catch (IOException e) {
+				throw new IllegalStateException(
+						"metadatum cannot be serialized", e);
+			}
+			xml = new XmlFragment(sb.toString());
+			mXml = xml;
+		}
+		return xml;
+	}
+
+	/**
+	 * Parameterless link metadatum. There is one shared instance per
+	 * {@link SimuLink}.
+	 */
+	public static final class Link extends SimuMetadata {
+		private static final Link[] INSTANCES;
+
+		static {
+			SimuLink[] links = SimuLink.values();
+			INSTANCES = new Link[links.length];
+			for (int i = 0; i < links.length; i++) {
+				INSTANCES[i] = new Link(links[i]);
+			}
+		}
+
+		private final SimuLink mLink;
+
+		private Link(SimuLink link) {
+			mLink = link;
+		}
+
+		/**
+		 * @param link
+		 *            link type
+		 * @return shared instance for the link
+		 */
+		public static Link of(SimuLink link) {
+			return INSTANCES[link.ordinal()];
+		}
+
+		/**
+		 * @return link type
+		 */
+		public SimuLink getLink() {
+			return mLink;
+		}
+
+		@Override
+		public String getElementName() {
+			return mLink.getElementName();
+		}
+
+		@Override
+		public Cardinality getCardinality() {
+			return mLink.getCardinality();
+		}
+
+		@Override
+		public Document toDocument(SimuMetaDataFactory factory) {
+			return mLink.createDocument(factory);
+		}
+
+		@Override
+		void write(SimuMetadataWriter writer) throws IOException {
+			writer.writeLink(mLink);
+		}
+
+		@Override
+		XmlFragment getSharedXml() {
+			return mLink.getXmlFragment();
+		}
+
+		@Override
+		public String toString() {
+			return "Link[" + mLink.getElementName() + "]";
+		}
+	}
+
+	/**
+	 * attack-detected metadatum
+	 */
+	public static final class AttackDetected extends SimuMetadata {
+		private final String mType;
+		private final String mId;
+		private final Float mSeverity;
+
+		/**
+		 * Constructor
+		 *
+		 * @param type
+		 *            attack type
+		 * @param id
+		 *            attack id
+		 * @param severity
+		 *            severity, null if not given
+		 */
+		public AttackDetected(String type, String id, Float severity) {
+			SimuElement.ATTACK_DETECTED.checkNotNull(0, type);
+			SimuElement.ATTACK_DETECTED.checkNotNull(1, id);
+			mType = type;
+			mId = id;
+			mSeverity = severity;
+		}
+
+		/**
+		 * @return attack type
+		 */
+		public String getType() {
+			return mType;
+		}
+
+		/**
+		 * @return attack id
+		 */
+		public String getId() {
+			return mId;
+		}
+
+		/**
+		 * @return severity, null if not given
+		 */
+		public Float getSeverity() {
+			return mSeverity;
+		}
+
+		@Override
+		public String getElementName() {
+			return SimuElement.ATTACK_DETECTED.getName();
+		}
+
+		@Override
+		public Cardinality getCardinality() {
+			return Cardinality.multiValue;
+		}
+
+		@Override
+		public Document toDocument(SimuMetaDataFactory factory) {
+			if (mSeverity != null) {
+				return factory.createAttackDetected(mType, mId, mSeverity);
+			}
+			Document doc = factory.createAttackDetected(mType, mId, 0);
+			Element root = doc.getDocumentElement();
+			root.removeChild(root.getLastChild());
+			return doc;
+		}
+
+		@Override
+		void write(SimuMetadataWriter writer) throws IOException {
+			writer.writeAttackDetected(mType, mId, mSeverity);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof AttackDetected)) {
+				return false;
+			}
+			AttackDetected other = (AttackDetected) obj;
+			return mType.equals(other.mType) && mId.equals(other.mId)
+					&& Objects.equals(mSeverity, other.mSeverity);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(mType, mId, mSeverity);
+		}
+
+		@Override
+		public String toString() {
+			return "AttackDetected[type=" + mType + ", id=" + mId
+					+ ", severity=" + mSeverity + "]";
+		}
+	}
+
+	/**
+	 * login-failure metadatum
+	 */
+	public static final class LoginFailure extends SimuMetadata {
+		private final CredentialType mCredentialType;
+		private final LoginFailureReason mReason;
+		private final String mTypeDef;
+		private final String mReasonDef;
+
+		/**
+		 * Constructor
+		 *
+		 * @param type
+		 *            credential type
+		 * @param reason
+		 *            failure reason
+		 * @param typeDef
+		 *            definition of the credential type, required if type is
+		 *            OTHER and ignored otherwise
+		 * @param reasonDef
+		 *            definition of the reason, required if reason is OTHER
+		 *            and ignored otherwise
+		 */
+		public LoginFailure(CredentialType type, LoginFailureReason reason,
+				String typeDef, String reasonDef) {
+			SimuElement.LOGIN_FAILURE.checkNotNull(0, type);
+			SimuElement.LOGIN_FAILURE.checkNotNull(1, reason);
+			if (type == CredentialType.OTHER) {
+				SimuElement.LOGIN_FAILURE.checkNotNull(2, typeDef);
+			}
+			if (reason == LoginFailureReason.OTHER) {
+				SimuElement.LOGIN_FAILURE.checkNotNull(3, reasonDef);
+			}
+			mCredentialType = type;
+			mReason = reason;
+			mTypeDef = type == CredentialType.OTHER ? typeDef : null;
+			mReasonDef = reason == LoginFailureReason.OTHER ? reasonDef : null;
+		}
+
+		/**
+		 * @return credential type
+		 */
+		public CredentialType getCredentialType() {
+			return mCredentialType;
+		}
+
+		/**
+		 * @return failure reason
+		 */
+		public LoginFailureReason getReason() {
+			return mReason;
+		}
+
+		/**
+		 * @return definition of the credential type, null unless the type is
+		 *         OTHER
+		 */
+		public String getCredentialTypeDefinition() {
+			return mTypeDef;
+		}
+
+		/**
+		 * @return definition of the reason, null unless the reason is OTHER
+		 */
+		public String getReasonDefinition() {
+			return mReasonDef;
+		}
+
+		@Override
+		public String getElementName() {
+			return SimuElement.LOGIN_FAILURE.getName();
+		}
+
+		@Override
+		public Cardinality getCardinality() {
+			return Cardinality.multiValue;
+		}
+
+		@Override
+		public Document toDocument(SimuMetaDataFactory factory) {
+			return factory.createLoginFailure(mCredentialType, mReason,
+					mTypeDef, mReasonDef);
+		}
+
+		@Override
+		void write(SimuMetadataWriter writer) throws IOException {
+			writer.writeLoginFailure(mCredentialType, mReason, mTypeDef,
+					mReasonDef);
+		}
+
+		@Override
+		XmlFragment getSharedXml() {
+			return SimuMetadataWriter.getLoginFailureXml(mCredentialType,
+					mReason);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof LoginFailure)) {
+				return false;
+			}
+			LoginFailure other = (LoginFailure) obj;
+			return mCredentialType == other.mCredentialType
+					&& mReason == other.mReason
+					&& Objects.equals(mTypeDef, other.mTypeDef)
+					&& Objects.equals(mReasonDef, other.mReasonDef);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(mCredentialType, mReason, mTypeDef,
+					mReasonDef);
+		}
+
+		@Override
+		public String toString() {
+			return "LoginFailure[credential-type=" + mCredentialType
+					+ ", reason=" + mReason + ", typeDef=" + mTypeDef
+					+ ", reasonDef=" + mReasonDef + "]";
+		}
+	}
+
+	/**
+	 * login-success metadatum
+	 */
+	public static final class LoginSuccess extends SimuMetadata {
+		private final CredentialType mCredentialType;
+		private final String mTypeDef;
+
+		/**
+		 * Constructor
+		 *
+		 * @param type
+		 *            credential type
+		 * @param typeDef
+		 *            definition of the credential type, required if type is
+		 *            OTHER and ignored otherwise
+		 */
+		public LoginSuccess(CredentialType type, String typeDef) {
+			SimuElement.LOGIN_SUCCESS.checkNotNull(0, type);
+			if (type == CredentialType.OTHER) {
+				SimuElement.LOGIN_SUCCESS.checkNotNull(1, typeDef);
+			}
+			mCredentialType = type;
+			mTypeDef = type == CredentialType.OTHER ? typeDef : null;
+		}
+
+		/**
+		 * @return credential type
+		 */
+		public CredentialType getCredentialType() {
+			return mCredentialType;
+		}
+
+		/**
+		 * @return definition of the credential type, null unless the type is
+		 *         OTHER
+		 */
+		public String getCredentialTypeDefinition() {
+			return mTypeDef;
+		}
+
+		@Override
+		public String getElementName() {
+			return SimuElement.LOGIN_SUCCESS.getName();
+		}
+
+		@Override
+		public Cardinality getCardinality() {
+			return Cardinality.multiValue;
+		}
+
+		@Override
+		public Document toDocument(SimuMetaDataFactory factory) {
+			return factory.createLoginSuccess(mCredentialType, mTypeDef);
+		}
+
+		@Override
+		void write(SimuMetadataWriter writer) throws IOException {
+			writer.writeLoginSuccess(mCredentialType, mTypeDef);
+		}
+
+		@Override
+		XmlFragment getSharedXml() {
+			return SimuMetadataWriter.getLoginSuccessXml(mCredentialType);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof LoginSuccess)) {
+				return false;
+			}
+			LoginSuccess other = (LoginSuccess) obj;
+			return mCredentialType == other.mCredentialType
+					&& Objects.equals(mTypeDef, other.mTypeDef);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(mCredentialType, mTypeDef);
+		}
+
+		@Override
+		public String toString() {
+			return "LoginSuccess[credential-type=" + mCredentialType
+					+ ", typeDef=" + mTypeDef + "]";
+		}
+	}
+
+	/**
+	 * file-status metadatum
+	 */
+	public static final class FileStatus extends SimuMetadata {
+		private final String mStatus;
+		private final String mDiscoveredTime;
+		private final String mImportance;
+
+		/**
+		 * Constructor
+		 *
+		 * @param status
+		 *            kind of change
+		 * @param discoveredTime
+		 *            time the change was discovered
+		 * @param importance
+		 *            importance of the file
+		 */
+		public FileStatus(String status, String discoveredTime,
+				String importance) {
+			SimuElement.FILE_STATUS.checkNotNull(0, status);
+			SimuElement.FILE_STATUS.checkNotNull(1, discoveredTime);
+			SimuElement.FILE_STATUS.checkNotNull(2, importance);
+			mStatus = status;
+			mDiscoveredTime = discoveredTime;
+			mImportance = importance;
+		}
+
+		/**
+		 * @return kind of change
+		 */
+		public String getStatus() {
+			return mStatus;
+		}
+
+		/**
+		 * @return time the change was discovered
+		 */
+		public String getDiscoveredTime() {
+			return mDiscoveredTime;
+		}
+
+		/**
+		 * @return importance of the file
+		 */
+		public String getImportance() {
+			return mImportance;
+		}
+
+		@Override
+		public String getElementName() {
+			return SimuElement.FILE_STATUS.getName();
+		}
+
+		@Override
+		public Cardinality getCardinality() {
+			return Cardinality.multiValue;
+		}
+
+		@Override
+		public Document toDocument(SimuMetaDataFactory factory) {
+			return factory.createFileChanged(mStatus, mDiscoveredTime,
+					mImportance);
+		}
+
+		@Override
+		void write(SimuMetadataWriter writer) throws IOException {
+			writer.writeFileChanged(mStatus, mDiscoveredTime, mImportance);
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof FileStatus)) {
+				return false;
+			}
+			FileStatus other = (FileStatus) obj;
+			return mStatus.equals(other.mStatus)
+					&& mDiscoveredTime.equals(other.mDiscoveredTime)
+					&& mImportance.equals(other.mImportance);
+		}
+
+		@Override
+		public int hashCode() {
+			return Objects.hash(mStatus, mDiscoveredTime, mImportance);
+		}
+
+		@Override
+		public String toString() {
+			return "FileStatus[status=" + mStatus + ", discovered-time="
+					+ mDiscoveredTime + ", importance=" + mImportance + "]";
+		}
+	}
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.simumetadata;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.hshannover.f4.trust.ifmapj.metadata.Cardinality;
+
+/**
+ * Windowed deduplication of multiValue metadata. The first occurrence of a
+ * metadatum starts a window of the configured length; equal metadata offered
+ * for the same subject within that window are counted and suppressed. The
+ * first occurrence after the window has passed is let through again and starts
+ * the next window, so at most one metadatum per window is published.
+ *
+ * Metadata are compared by the value of their {@link SimuMetadata} fields,
+ * nothing is serialized. singleValue metadata replace each other on the MAP
+ * server and are always let through.
+ *
+ * At most maxEntries windows are tracked. When the limit is reached, expired
+ * windows are purged; if all windows are still open, new metadata are let
+ * through untracked, so a flood of distinct metadata is never dropped. All
+ * methods are lock-free and safe for concurrent producers.
+ *
+ * @author DECOIT GmbH
+ *
+ */
+public class SimuMetadataCoalescer {
+
+	private final ConcurrentHashMap<Object, Long> mWindows;
+	private final long mWindowNanos;
+	private final int mMaxEntries;
+	private final AtomicLong mNextPurge;
+	private final AtomicLong mPassed = new AtomicLong();
+	private final AtomicLong mSuppressed = new AtomicLong();
+	private final AtomicLong mUntracked = new AtomicLong();
+
+	/**
+	 * Constructor
+	 *
+	 * @param window
+	 *            length of a window
+	 * @param unit
+	 *            unit of window
+	 * @param maxEntries
+	 *            maximum number of tracked windows
+	 */
+	public SimuMetadataCoalescer(long window, TimeUnit unit, int maxEntries) {
+		if (window <= 0) {
+			throw new IllegalArgumentException("window must be positive");
+		}
+		if (maxEntries < 1) {
+			throw new IllegalArgumentException("maxEntries must be positive");
+		}
+		mWindowNanos = unit.toNanos(window);
+		mMaxEntries = maxEntries;
+		mNextPurge = new AtomicLong(System.nanoTime());
+		mWindows = new ConcurrentHashMap<Object, Long>(Math.min(maxEntries,
+				1024));
+	}
+
+	/**
+	 * Offering a metadatum without subject, e.g. if all metadata passing this
+	 * stage are published on the same identifier
+	 *
+	 * @param metadata
+	 *            metadatum to publish
+	 * @return true if the metadatum is to be published, false if it is a
+	 *         duplicate within the current window
+	 */
+	public boolean offer(SimuMetadata metadata) {
+		return offer(null, metadata);
+	}
+
+	/**
+	 * Offering a metadatum
+	 *
+	 * @param subject
+	 *            identifier or link the metadatum is published on, null for
+	 *            none; must implement equals() and hashCode()
+	 * @param metadata
+	 *            metadatum to publish
+	 * @return true if the metadatum is to be published, false if it is a
+	 *         duplicate within the current window
+	 */
+	public boolean offer(Object subject, SimuMetadata metadata) {
+		if (metadata.getCardinality() != Cardinality.multiValue) {
+			mPassed.incrementAndGet();
+			return true;
+		}
+		Object key = subject == null ? metadata : new Key(subject, metadata);
+		long now = System.nanoTime();
+
+		Long start = mWindows.get(key);
+		if (start == null) {
+			if (mWindows.size() >= mMaxEntries && !purge(now)) {
+				mUntracked.incrementAndGet();
+				mPassed.incrementAndGet();
+				return true;
+			}
+			start = mWindows.putIfAbsent(key, now);
+			if (start == null) {
+				mPassed.incrementAndGet();
+				return true;
+			}
+		}
+		if (now - start >= mWindowNanos && mWindows.replace(key, start, now)) {
+			mPassed.incrementAndGet();
+			return true;
+		}
+		mSuppressed.incrementAndGet();
+		return false;
+	}
+
+	/**
+	 * Removing expired windows, at most once per window length
+	 *
+	 * @return true if there is room for a new window
+	 */
+	private boolean purge(long now) {
+		long next = mNextPurge.get();
+		if (now - next >= 0 && mNextPurge.compareAndSet(next, now + mWindowNanos)) {
+			Iterator<Map.Entry<Object, Long>> it = mWindows.entrySet()
+					.iterator();
+			while (it.hasNext()) {
+				if (now - it.next().getValue() >= mWindowNanos) {
+					it.remove();
+				}
+			}
+		}
+		return mWindows.size() < mMaxEntries;
+	}
+
+	/**
+	 * @return number of metadata let through
+	 */
+	public long getPassedCount() {
+		return mPassed.get();
+	}
+
+	/**
+	 * @return number of duplicates suppressed
+	 */
+	public long getSuppressedCount() {
+		return mSuppressed.get();
+	}
+
+	/**
+	 * @return number of metadata let through without tracking because all
+	 *         windows were in use
+	 */
+	public long getUntrackedCount() {
+		return mUntracked.get();
+	}
+
+	/**
+	 * @return number of tracked windows, including expired ones not purged yet
+	 */
+	public int size() {
+		return mWindows.size();
+	}
+
+	/**
+	 * Forgetting all windows. Statistics are kept.
+	 */
+	public void clear() {
+		mWindows.clear();
+	}
+
+	/**
+	 * Window key made of subject and metadatum
+	 */
+	private static final class Key {
+		private final Object mSubject;
+		private final SimuMetadata mMetadata;
+		private final int mHash;
+
+		Key(Object subject, SimuMetadata metadata) {
+			mSubject = subject;
+			mMetadata = metadata;
+			mHash = 31 * subject.hashCode() + metadata.hashCode();
+		}
+
+		@Override
+		public int hashCode() {
+			return mHash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if (this == obj) {
+				return true;
+			}
+			if (!(obj instanceof Key)) {
+				return false;
+			}
+			Key other = (Key) obj;
+			return mHash == other.mHash && mSubject.equals(other.mSubject)
+					&& mMetadata.equals(other.mMetadata);
+		}
+	}
+}
@@ -16,36 +16,37 @@
  */
 package de.decoit.simumetadata;
 
-import java.io.StringWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
 
 import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
-import javax.xml.transform.OutputKeys;
-import javax.xml.transform.Transformer;
-import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
-import javax.xml.transform.dom.DOMSource;
-import javax.xml.transform.stream.StreamResult;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
-import org.w3c.dom.Text;
 
 import de.hshannover.f4.trust.ifmapj.exception.MarshalException;
 import de.hshannover.f4.trust.ifmapj.identifier.Identifier;
-import de.hshannover.f4.trust.ifmapj.identifier.Identifiers;
 import de.hshannover.f4.trust.ifmapj.metadata.Cardinality;
 
 /**
  * Implemented Simu MetaData Factory. Creating SIMU specific Metadaten
  * 
+ * Instances are thread-safe and may be shared by any number of publisher
+ * threads. Document builders are borrowed from a striped pool for each call,
+ * so concurrent callers do not contend on a global lock.
+ * 
  * @author Leonid Schwenke
  * 
  */
-public class SimuMetadataFactoryImpl implements SimuMetaDataFactory {
+public class SimuMetadataFactoryImpl implements SimuMetaDataFactoryExtension {
 
-	private DocumentBuilder mDocumentBuilder;
+	private final DocumentBuilderPool mDocumentBuilders;
+	private final EnumMap<SimuLink, Document> mLinkTemplates;
+	private final IdentifierCache mIdentifierCache;
+	private final DocumentPool mDocumentPool;
 
 	/**
 	 * Constructor
@@ -53,20 +54,164 @@ public class SimuMetadataFactoryImpl implements SimuMetaDataFactory {
 	 * @throws ParserConfigurationException
 	 */
 	public SimuMetadataFactoryImpl() throws ParserConfigurationException {
-		DocumentBuilderFactory dbf = DocumentBuilderFactory.newInstance();
-		dbf.setNamespaceAware(true);
-		mDocumentBuilder = dbf.newDocumentBuilder();
+		this(null);
+	}
+
+	/**
+	 * Constructor for a factory returning cached identifiers for repeated
+	 * attribute tuples
+	 * 
+	 * @param identifierCache
+	 *            cache for extended identifiers, null to disable caching
+	 * @throws ParserConfigurationException
+	 */
+	public SimuMetadataFactoryImpl(IdentifierCache identifierCache)
+			throws ParserConfigurationException {
+		this(identifierCache, 0);
+	}
+
+	/**
+	 * Constructor for a factory reusing the documents of metadata with values.
+	 * Documents handed back with {@link #release(Document)} are kept in a
+	 * bounded pool per element type and are returned again by later calls,
+	 * with only their text values replaced. Parameterless links are not
+	 * pooled.
+	 * 
+	 * @param identifierCache
+	 *            cache for extended identifiers, null to disable caching
+	 * @param pooledDocuments
+	 *            released documents kept per element type and thread stripe,
+	 *            0 to disable pooling
+	 * @throws ParserConfigurationException
+	 */
+	public SimuMetadataFactoryImpl(IdentifierCache identifierCache,
+			int pooledDocuments) throws ParserConfigurationException {
+		if (pooledDocuments < 0) {
+			throw new IllegalArgumentException(
+					"pooledDocuments must not be negative");
+		}
+		mIdentifierCache = identifierCache;
+		mDocumentBuilders = new DocumentBuilderPool();
+		mDocumentPool = pooledDocuments == 0 ? null : new DocumentPool(
+				mDocumentBuilders, pooledDocuments);
+		mLinkTemplates = new EnumMap<SimuLink, Document>(SimuLink.class);
+		for (SimuLink link : SimuLink.values()) {
+			mLinkTemplates.put(link, createSimuSingleElementDocument(
+					link.getElementName(), link.getCardinality()));
+		}
+	}
+
+	/**
+	 * Creating a parameterless link document by cloning its template. The
+	 * templates are never handed out and only read, so concurrent cloning is
+	 * safe.
+	 */
+	@Override
+	public Document createLink(SimuLink link) {
+		return (Document) mLinkTemplates.get(link).cloneNode(true);
+	}
+
+	/**
+	 * Handing a metadata document back to the pool of a factory created with
+	 * pooledDocuments. The document must not be used any more afterwards,
+	 * e.g. release documents passed to ifmapj only once the publish request
+	 * was sent. Documents not created by a pooling factory are ignored.
+	 * 
+	 * @param doc
+	 *            document returned by one of the create methods
+	 * @return true if the document was taken back, false if it does not
+	 *         belong to the pool or was released before
+	 */
+	public boolean release(Document doc) {
+		return mDocumentPool != null && mDocumentPool.release(doc);
+	}
+
+	/**
+	 * @return true if documents are pooled
+	 */
+	public boolean isPooling() {
+		return mDocumentPool != null;
+	}
+
+	/**
+	 * @return identifier cache of this factory or null if caching is disabled
+	 */
+	public IdentifierCache getIdentifierCache() {
+		return mIdentifierCache;
+	}
+
+	/**
+	 * Creating the cache key of an identifier
+	 * 
+	 * @param element
+	 *            identifier element
+	 * @param values
+	 *            parameters the identifier is created from
+	 * @return key
+	 */
+	private IdentifierCache.Key cacheKey(SimuElement element,
+			Object... values) {
+		return new IdentifierCache.Key(element.getName(), values);
+	}
+
+	/**
+	 * Looking up a cached identifier
+	 * 
+	 * @param key
+	 *            key or null if caching is disabled
+	 * @return cached identifier or null
+	 */
+	private Identifier lookupIdentifier(IdentifierCache.Key key) {
+		return key == null ? null : mIdentifierCache.get(key);
+	}
+
+	/**
+	 * Adding a new identifier to the cache
+	 * 
+	 * @param key
+	 *            key or null if caching is disabled
+	 * @param identifier
+	 *            created identifier
+	 * @return identifier
+	 */
+	private Identifier cacheIdentifier(IdentifierCache.Key key,
+			Identifier identifier) {
+		if (key != null) {
+			mIdentifierCache.put(key, identifier);
+		}
+		return identifier;
+	}
+
+	/**
+	 * Creating a new empty Document with a builder borrowed from the pool
+	 * 
+	 * @return Created Document
+	 */
+	private Document newDocument() {
+		DocumentBuilder builder = mDocumentBuilders.acquire();
+		try {
+			return builder.newDocument();
+		} finally {
+			mDocumentBuilders.release(builder);
+		}
 	}
 
 	private Document createSimuSingleElementDocument(String name,
 			Cardinality card) {
-		return createSingleElementDocument(SIMU_METADATA_PREFIX + ":" + name,
-				SIMU_METADATA_URI, card);
+		return createSimuSingleElementDocument(newDocument(), name, card);
+	}
+
+	private Document createSimuSingleElementDocument(Document doc,
+			String name, Cardinality card) {
+		return createSingleElementDocument(doc, SIMU_METADATA_PREFIX + ":"
+				+ name, SIMU_METADATA_URI, card);
 	}
 
 	/**
 	 * Creating a Single Elemented Document
 	 * 
+	 * @param doc
+	 *            empty Document to add the element to
 	 * @param qualifiedName
 	 *            Qualified Name
 	 * @param uri
@@ -75,9 +220,8 @@ public class SimuMetadataFactoryImpl implements SimuMetaDataFactory {
 	 *            Singevalue or Multivalue
 	 * @return Created Document
 	 */
-	private Document createSingleElementDocument(String qualifiedName,
-			String uri, Cardinality cardinality) {
-		Document doc = mDocumentBuilder.newDocument();
+	private Document createSingleElementDocument(Document doc,
+			String qualifiedName, String uri, Cardinality cardinality) {
 		Element e = doc.createElementNS(uri, qualifiedName);
 		e.setAttributeNS(null, "ifmap-cardinality", cardinality.toString());
 		doc.appendChild(e);
@@ -85,68 +229,69 @@ public class SimuMetadataFactoryImpl implements SimuMetaDataFactory {
 	}
 
 	/**
-	 * Helper to create a new element with name elName and append it to the
-	 * {@link Element} given by parent if the given value is non-null. The new
-	 * {@link Element} will have {@link Text} node containing value.
+	 * Checking that all columns of a batch call have the same length
 	 * 
-	 * @param doc
-	 *            {@link Document} where parent is located in
-	 * @param parent
-	 *            where to append the new element
-	 * @param elName
-	 *            the name of the new element.
-	 * @param value
-	 *            the value of the {@link Text} node appended to the new
-	 *            element, using toString() on the object.
+	 * @param lengths
+	 *            column lengths
+	 * @return common length
 	 */
-	private void appendTextElementIfNotNull(Document doc, Element parent,
-			String elName, Object value) {
-
-		if (value == null) {
-			return;
+	static int checkColumns(int... lengths) {
+		for (int len : lengths) {
+			if (len != lengths[0]) {
+				throw new IllegalArgumentException(
+						"all columns must have the same length");
+			}
 		}
-
-		createAndAppendTextElementCheckNull(doc, parent, elName, value);
+		return lengths[0];
 	}
 
 	/**
-	 * Helper to create a new element with name elName and append it to the
-	 * {@link Element} given by parent. The new {@link Element} will have
-	 * {@link Text} node containing value.
+	 * Creating a metadatum in an empty Document. The field values are
+	 * appended as text elements in document order, absent optional fields are
+	 * left out.
 	 * 
 	 * @param doc
-	 *            {@link Document} where parent is located in
-	 * @param parent
-	 *            where to append the new element
-	 * @param elName
-	 *            the name of the new element.
-	 * @param value
-	 *            the value of the {@link Text} node appended to the new
-	 *            element, using toString() on the object. is null
-	 * @return the new {@link Element}
+	 *            empty Document to add the metadatum to
+	 * @param element
+	 *            schema of the metadatum
+	 * @param values
+	 *            value per field of the schema, null if absent
+	 * @return doc
 	 */
-	private Element createAndAppendTextElementCheckNull(Document doc,
-			Element parent, String elName, Object value) {
-
-		if (doc == null || parent == null || elName == null) {
-			throw new NullPointerException("bad parameters given");
+	private Document createMetadata(Document doc, SimuElement element,
+			String... values) {
+		checkRequired(element, values);
+		createSimuSingleElementDocument(doc, element.getName(),
+				element.getCardinality());
+		Element root = (Element) doc.getFirstChild();
+		for (int i = 0; i < values.length; i++) {
+			if (values[i] != null) {
+				Element child = createAndAppendElement(doc, root,
+						element.getFieldName(i));
+				child.appendChild(doc.createTextNode(values[i]));
+			}
 		}
+		return doc;
+	}
 
-		if (value == null) {
-			throw new NullPointerException("null is not allowed for " + elName
-					+ " in " + doc.getFirstChild().getLocalName());
+	/**
+	 * Creating a metadatum, taking the document from the pool if pooling is
+	 * enabled
+	 */
+	private Document createMetadata(SimuElement element, String... values) {
+		if (mDocumentPool == null) {
+			return createMetadata(newDocument(), element, values);
 		}
+		checkRequired(element, values);
+		return mDocumentPool.acquire(element, values);
+	}
 
-		String valueStr = value.toString();
-		if (valueStr == null) {
-			throw new NullPointerException("null-string not allowed for "
-					+ elName + " in " + doc.getFirstChild().getLocalName());
+	private static void checkRequired(SimuElement element, String[] values) {
+		for (int i = 0; i < values.length; i++) {
+			if (element.isRequired(i)) {
+				element.checkNotNull(i, values[i]);
+			}
 		}
-
-		Element child = createAndAppendElement(doc, parent, elName);
-		Text txtcElement = doc.createTextNode(valueStr);
-		child.appendChild(txtcElement);
-		return child;
 	}
 
 	/**
@@ -171,19 +316,13 @@ public class SimuMetadataFactoryImpl implements SimuMetaDataFactory {
 
 	@Override
 	public Document createAttackDetected(String type, String id, float severity) {
-		Document doc = createSimuSingleElementDocument("attack-detected",
-				Cardinality.multiValue);
-		Element root = (Element) doc.getFirstChild();
-		createAndAppendTextElementCheckNull(doc, root, "type", type);
-		createAndAppendTextElementCheckNull(doc, root, "id", id);
-		appendTextElementIfNotNull(doc, root, "severity", severity);
-		return doc;
+		return createMetadata(SimuElement.ATTACK_DETECTED, type, id,
+				SimuNumbers.toString(severity));
 	}
 
 	@Override
 	public Document createIdentifiesAs() {
-		return createSimuSingleElementDocument("identifies-as",
-				Cardinality.singleValue);
+		return createLink(SimuLink.IDENTIFIES_AS);
 	}
 
 	@Override
@@ -195,24 +334,20 @@ public class SimuMetadataFactoryImpl implements SimuMetaDataFactory {
 	@Override
 	public Document createLoginFailure(CredentialType type,
 			LoginFailureReason reason, String typeDef, String reasonDef) {
-		Document doc = createSimuSingleElementDocument("login-failure",
-				Cardinality.multiValue);
-		Element root = (Element) doc.getFirstChild();
-
-		createAndAppendTextElementCheckNull(doc, root, "credential-type",
-				type.toString());
-		createAndAppendTextElementCheckNull(doc, root, "reason",
-				reason.toString());
-
-		if (type.equals(CredentialType.OTHER)) {
-			createAndAppendTextElementCheckNull(doc, root,
-					"other-credential-type-definition", typeDef);
+		SimuElement e = SimuElement.LOGIN_FAILURE;
+		String typeStr = type.toString();
+		String reasonStr = reason.toString();
+		if (type == CredentialType.OTHER) {
+			e.checkNotNull(2, typeDef);
+		} else {
+			typeDef = null;
 		}
-		if (reason.equals(LoginFailureReason.OTHER)) {
-			createAndAppendTextElementCheckNull(doc, root,
-					"other-reason-type-definition", reasonDef);
+		if (reason == LoginFailureReason.OTHER) {
+			e.checkNotNull(3, reasonDef);
+		} else {
+			reasonDef = null;
 		}
-		return doc;
+		return createMetadata(e, typeStr, reasonStr, typeDef, reasonDef);
 	}
 
 	@Override
@@ -222,34 +357,29 @@ public class SimuMetadataFactoryImpl implements SimuMetaDataFactory {
 
 	@Override
 	public Document createLoginSuccess(CredentialType type, String typeDef) {
-		Document doc = createSimuSingleElementDocument("login-success",
-				Cardinality.multiValue);
-		Element root = (Element) doc.getFirstChild();
-		createAndAppendTextElementCheckNull(doc, root, "credential-type",
-				type.toString());
-		if (type.equals(CredentialType.OTHER)) {
-			createAndAppendTextElementCheckNull(doc, root,
-					"other-credential-type-definition", typeDef);
+		SimuElement e = SimuElement.LOGIN_SUCCESS;
+		String typeStr = type.toString();
+		if (type == CredentialType.OTHER) {
+			e.checkNotNull(1, typeDef);
+		} else {
+			typeDef = null;
 		}
-		return doc;
+		return createMetadata(e, typeStr, typeDef);
 	}
 
 	@Override
 	public Document createServiceIP() {
-		return createSimuSingleElementDocument("service-ip",
-				Cardinality.singleValue);
+		return createLink(SimuLink.SERVICE_IP);
 	}
 
 	@Override
 	public Document createServiceDiscoveredBy() {
-		return createSimuSingleElementDocument("service-discovered-by",
-				Cardinality.singleValue);
+		return createLink(SimuLink.SERVICE_DISCOVERED_BY);
 	}
 
 	@Override
 	public Document createDeviceDiscoveredBy() {
-		return createSimuSingleElementDocument("device-discovered-by",
-				Cardinality.singleValue);
+		return createLink(SimuLink.DEVICE_DISCOVERED_BY);
 	}
 
 	// @Override
@@ -275,90 +405,120 @@ public class SimuMetadataFactoryImpl implements SimuMetaDataFactory {
 
 	@Override
 	public Document createImplementationVulnerability() {
-		return createSimuSingleElementDocument("implementation-vulnerability",
-				Cardinality.singleValue);
+		return createLink(SimuLink.IMPLEMENTATION_VULNERABILITY);
 	}
 
 	@Override
 	public Document createServiceImplementation() {
-		return createSimuSingleElementDocument("service-implementation",
-				Cardinality.singleValue);
+		return createLink(SimuLink.SERVICE_IMPLEMENTATION);
 	}
 
 	@Override
 	public Document createFileMonitored() {
-		Document doc = createSimuSingleElementDocument("file-monitored",
-				Cardinality.singleValue);
-		return doc;
+		return createLink(SimuLink.FILE_MONITORED);
 	}
 
 	@Override
 	public Document createFileChanged(String kind, String time,
 			String importance) {
-		Document doc = createSimuSingleElementDocument("file-status",
-				Cardinality.multiValue);
-		Element root = (Element) doc.getFirstChild();
-		createAndAppendTextElementCheckNull(doc, root, "status", kind);
-		createAndAppendTextElementCheckNull(doc, root, "discovered-time", time);
-		createAndAppendTextElementCheckNull(doc, root, "importance", importance);
-		return doc;
+		return createMetadata(SimuElement.FILE_STATUS, kind, time, importance);
+	}
+
+	@Override
+	public List<Document> createFileChanged(String[] kinds, String[] times,
+			String[] importances) {
+		int count = checkColumns(kinds.length, times.length,
+				importances.length);
+		List<Document> docs = new ArrayList<Document>(count);
+		if (mDocumentPool != null) {
+			for (int i = 0; i < count; i++) {
+				docs.add(createMetadata(SimuElement.FILE_STATUS, kinds[i],
+						times[i], importances[i]));
+			}
+			return docs;
+		}
+		DocumentBuilder builder = mDocumentBuilders.acquire();
+		try {
+			for (int i = 0; i < count; i++) {
+				docs.add(createMetadata(builder.newDocument(),
+						SimuElement.FILE_STATUS, kinds[i], times[i],
+						importances[i]));
+			}
+		} finally {
+			mDocumentBuilders.release(builder);
+		}
+		return docs;
 	}
 
 	@Override
 	public Identifier createVulnerability(String type, String id, float severity)
 			throws MarshalException {
-		Identifier vulnerability = null;
-
-		Document doc = mDocumentBuilder.newDocument();
-		Element e = doc
-				.createElementNS(SIMU_IDENTIFIER_URI, SIMU_METADATA_PREFIX+":vulnerability");
-		e.setAttribute("type", type);
-		e.setAttribute("id", id);
-		e.setAttribute("severity-score", severity + "");
-		doc.appendChild(e);
-
-		vulnerability = Identifiers.createExtendedIdentity(doc);
+		IdentifierCache.Key key = mIdentifierCache == null ? null
+				: cacheKey(SimuElement.VULNERABILITY, type, id, severity);
+		Identifier cached = lookupIdentifier(key);
+		if (cached != null) {
+			return cached;
+		}
 
-		return vulnerability;
+		return cacheIdentifier(key, ExtendedIdentities.create(
+				SimuElement.VULNERABILITY, type, id,
+				SimuNumbers.toString(severity)));
 	}
 
 	@Override
 	public Identifier createVulnerability(String type, String id)
 			throws MarshalException {
-		Identifier vulnerability = null;
-
-		Document doc = mDocumentBuilder.newDocument();
-		Element e = doc
-				.createElementNS(SIMU_IDENTIFIER_URI, SIMU_METADATA_PREFIX+":vulnerability");
-		e.setAttribute("type", type);
-		e.setAttribute("id", id);
-		doc.appendChild(e);
+		IdentifierCache.Key key = mIdentifierCache == null ? null
+				: cacheKey(SimuElement.VULNERABILITY, type, id);
+		Identifier cached = lookupIdentifier(key);
+		if (cached != null) {
+			return cached;
+		}
 
-		vulnerability = Identifiers.createExtendedIdentity(doc);
+		return cacheIdentifier(key, ExtendedIdentities.create(
+				SimuElement.VULNERABILITY, type, id, null));
+	}
 
-		return vulnerability;
+	@Override
+	public List<Identifier> createVulnerabilities(String[] types,
+			String[] ids, float[] severities) throws MarshalException {
+		int count = severities == null ? checkColumns(types.length,
+				ids.length) : checkColumns(types.length, ids.length,
+				severities.length);
+		List<Identifier> identifiers = new ArrayList<Identifier>(count);
+		for (int i = 0; i < count; i++) {
+			IdentifierCache.Key key = null;
+			if (mIdentifierCache != null) {
+				key = severities == null ? cacheKey(SimuElement.VULNERABILITY,
+						types[i], ids[i]) : cacheKey(SimuElement.VULNERABILITY,
+						types[i], ids[i], severities[i]);
+			}
+			Identifier vulnerability = lookupIdentifier(key);
+			if (vulnerability == null) {
+				vulnerability = cacheIdentifier(key, ExtendedIdentities.create(
+						SimuElement.VULNERABILITY, types[i], ids[i],
+						severities == null ? null : SimuNumbers
+								.toString(severities[i])));
+			}
+			identifiers.add(vulnerability);
+		}
+		return identifiers;
 	}
 
 	@Override
 	public Identifier createImplementation(String name, String version,
 			String localVersion, String platform) throws MarshalException {
-		Identifier implementation = null;
-		Document doc = mDocumentBuilder.newDocument();
-		Element e = doc
-				.createElementNS(SIMU_IDENTIFIER_URI, SIMU_METADATA_PREFIX+":vulnerability");
-		e.setAttribute("name", name);
-		e.setAttribute("version", version);
-		if (localVersion != null) {
-			e.setAttribute("local-version", localVersion);
-		}
-		if (platform != null) {
-			e.setAttribute("platform", platform);
+		IdentifierCache.Key key = mIdentifierCache == null ? null
+				: cacheKey(SimuElement.IMPLEMENTATION, name, version,
+						localVersion, platform);
+		Identifier cached = lookupIdentifier(key);
+		if (cached != null) {
+			return cached;
 		}
-		doc.appendChild(e);
 
-		implementation = Identifiers.createExtendedIdentity(doc);
-
-		return implementation;
+		return cacheIdentifier(key, ExtendedIdentities.create(
+				SimuElement.IMPLEMENTATION, name, version, localVersion,
+				platform));
 	}
 
 	@Override
@@ -370,47 +530,44 @@ public class SimuMetadataFactoryImpl implements SimuMetaDataFactory {
 	@Override
 	public Identifier createService(String type, String name, int port,
 			String ad) throws MarshalException {
+		IdentifierCache.Key key = mIdentifierCache == null ? null
+				: cacheKey(SimuElement.SERVICE, type, name, port, ad);
+		Identifier cached = lookupIdentifier(key);
+		if (cached != null) {
+			return cached;
+		}
 
-		Identifier service = null;
-		Document doc = mDocumentBuilder.newDocument();
-		Element e = doc.createElementNS(SIMU_IDENTIFIER_URI, SIMU_METADATA_PREFIX+":service");
-		e.setAttribute("type", type);
-		e.setAttribute("name", name);
-		e.setAttribute("port", port + "");
-		e.setAttribute("administrative-domain", ad);
-		doc.appendChild(e);
-
-		service = Identifiers.createExtendedIdentity(doc);
-
-		return service;
+		return cacheIdentifier(key, ExtendedIdentities.create(
+				SimuElement.SERVICE, type, name, SimuNumbers.toString(port), ad));
 	}
 
 	public Identifier createFileIdentifier(String path, String ad)
 			throws MarshalException {
+		IdentifierCache.Key key = mIdentifierCache == null ? null
+				: cacheKey(SimuElement.FILE, path, ad);
+		Identifier cached = lookupIdentifier(key);
+		if (cached != null) {
+			return cached;
+		}
 
-		Identifier service = null;
-		Document doc = mDocumentBuilder.newDocument();
-		Element e = doc.createElementNS(SIMU_IDENTIFIER_URI, SIMU_METADATA_PREFIX+":file");
-		e.setAttribute("path", path);
-		e.setAttribute("administrative-domain", ad);
-		doc.appendChild(e);
-
-		service = Identifiers.createExtendedIdentity(doc);
-		return service;
+		return cacheIdentifier(key, ExtendedIdentities.create(
+				SimuElement.FILE, path, ad));
 	}
 	
-	public String getXMLString(Document doc){
+	/**
+	 * Serializing a document to a String without XML declaration and line
+	 * feeds, see {@link SimuXmlSerializer}
+	 * 
+	 * @param doc
+	 *            document to serialize
+	 * @return XML string or null if the document cannot be serialized, e.g.
+	 *         because a value contains an unpaired surrogate
+	 */
+	public String getXMLString(Document doc) {
 		String output = null;
 		try {
-		TransformerFactory tf = TransformerFactory.newInstance();
-		Transformer transformer = tf.newTransformer();
-		transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
-		StringWriter writer = new StringWriter();
-
-			transformer.transform(new DOMSource(doc), new StreamResult(writer));
-
-		output = writer.getBuffer().toString().replaceAll("\n|\r", "");
-		} catch (TransformerException e1) {
+			output = SimuXmlSerializer.toXmlString(doc);
+		} catch (IOException e1) {
 			e1.printStackTrace();
 		}
 		return output;
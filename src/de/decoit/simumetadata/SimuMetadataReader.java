@@ -0,0 +1,498 @@
+/*
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.simumetadata;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import de.hshannover.f4.trust.ifmapj.exception.UnmarshalException;
+import de.hshannover.f4.trust.ifmapj.identifier.Identifier;
+import de.hshannover.f4.trust.ifmapj.identifier.Identity;
+import de.hshannover.f4.trust.ifmapj.identifier.IdentityType;
+
+/**
+ * Streaming decoder turning SIMU metadata and extended identifiers back into
+ * {@link SimuMetadata} and {@link SimuIdentifier} value objects. Input is read
+ * with StAX, no DOM is built. Every element the factory creates is supported;
+ * elements and fields not described by {@link SimuElement} or
+ * {@link SimuLink} and missing mandatory values are rejected.
+ *
+ * DTDs and external entities are disabled.
+ *
+ * @author DECOIT GmbH
+ *
+ */
+public final class SimuMetadataReader {
+
+	private static final XMLInputFactory INPUT_FACTORY = XMLInputFactory
+			.newInstance();
+	private static final ReentrantLock INPUT_FACTORY_LOCK = new ReentrantLock();
+
+	static {
+		INPUT_FACTORY.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE,
+				Boolean.TRUE);
+		INPUT_FACTORY.setProperty(XMLInputFactory.IS_COALESCING, Boolean.TRUE);
+		INPUT_FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+		INPUT_FACTORY.setProperty(
+				XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+	}
+
+	private SimuMetadataReader() {
+	}
+
+	/**
+	 * Decode a metadatum
+	 *
+	 * @param xml
+	 *            serialized metadatum, e.g. as returned by getXMLString()
+	 * @return decoded metadatum
+	 * @throws UnmarshalException
+	 *             if the input is no valid SIMU metadatum
+	 */
+	public static SimuMetadata readMetadata(String xml)
+			throws UnmarshalException {
+		return readMetadata(new StringReader(xml));
+	}
+
+	/**
+	 * Decode a metadatum
+	 *
+	 * @param reader
+	 *            source of the serialized metadatum, not closed
+	 * @return decoded metadatum
+	 * @throws UnmarshalException
+	 *             if the input is no valid SIMU metadatum
+	 */
+	public static SimuMetadata readMetadata(Reader reader)
+			throws UnmarshalException {
+		XMLStreamReader r = null;
+		try {
+			r = open(reader);
+			return readMetadata(r);
+		} catch (XMLStreamException e) {
+			throw new UnmarshalException(e.getMessage());
+		} finally {
+			close(r);
+		}
+	}
+
+	/**
+	 * Decode a metadatum, detecting the encoding from the input
+	 *
+	 * @param in
+	 *            source of the serialized metadatum, not closed
+	 * @return decoded metadatum
+	 * @throws UnmarshalException
+	 *             if the input is no valid SIMU metadatum
+	 */
+	public static SimuMetadata readMetadata(InputStream in)
+			throws UnmarshalException {
+		XMLStreamReader r = null;
+		try {
+			r = open(in);
+			return readMetadata(r);
+		} catch (XMLStreamException e) {
+			throw new UnmarshalException(e.getMessage());
+		} finally {
+			close(r);
+		}
+	}
+
+	/**
+	 * Decode the XML of an extended identifier
+	 *
+	 * @param xml
+	 *            unescaped identifier element, e.g.
+	 *            &lt;vulnerability xmlns="http://simu-project.de/XMLSchema/1"
+	 *            id="x" type="CVE"/&gt;
+	 * @return decoded identifier
+	 * @throws UnmarshalException
+	 *             if the input is no valid SIMU identifier
+	 */
+	public static SimuIdentifier readIdentifier(String xml)
+			throws UnmarshalException {
+		XMLStreamReader r = null;
+		try {
+			r = open(new StringReader(xml));
+			return readIdentifier(r);
+		} catch (XMLStreamException e) {
+			throw new UnmarshalException(e.getMessage());
+		} finally {
+			close(r);
+		}
+	}
+
+	/**
+	 * Decode an extended identifier as created by the factory or received from
+	 * the MAP server
+	 *
+	 * @param identifier
+	 *            identity of type other with the type definition "extended"
+	 * @return decoded identifier
+	 * @throws UnmarshalException
+	 *             if the identifier is no SIMU extended identifier
+	 */
+	public static SimuIdentifier readIdentifier(Identifier identifier)
+			throws UnmarshalException {
+		if (!(identifier instanceof Identity)) {
+			throw new UnmarshalException("not an extended identifier: "
+					+ identifier);
+		}
+		Identity identity = (Identity) identifier;
+		if (identity.getType() != IdentityType.other
+				|| !"extended".equals(identity.getOtherTypeDefinition())
+				|| identity.getName() == null) {
+			throw new UnmarshalException("not an extended identifier: "
+					+ identifier);
+		}
+		return readIdentifier(unescape(identity.getName()));
+	}
+
+	private static SimuMetadata readMetadata(XMLStreamReader r)
+			throws XMLStreamException, UnmarshalException {
+		r.nextTag();
+		String name = r.getLocalName();
+		if (!SimuMetaDataFactory.SIMU_METADATA_URI.equals(r.getNamespaceURI())) {
+			throw new UnmarshalException("not a SIMU metadatum: {"
+					+ r.getNamespaceURI() + "}" + name);
+		}
+
+		SimuElement e = SimuElement.forName(true, name);
+		if (e == null) {
+			for (SimuLink link : SimuLink.values()) {
+				if (link.getElementName().equals(name)) {
+					if (r.nextTag() != XMLStreamConstants.END_ELEMENT) {
+						throw new UnmarshalException("unexpected element "
+								+ r.getName() + " in " + name);
+					}
+					return SimuMetadata.Link.of(link);
+				}
+			}
+			throw new UnmarshalException("unknown SIMU metadatum: " + name);
+		}
+
+		String[] v = readChildren(r, e);
+		switch (e) {
+		case ATTACK_DETECTED:
+			return new SimuMetadata.AttackDetected(v[0], v[1], parseFloat(v,
+					2, e));
+		case LOGIN_FAILURE:
+			CredentialType type = credentialType(v, 2, e);
+			LoginFailureReason reason = LoginFailureReason.forName(v[1]);
+			if (reason == null) {
+				throw new UnmarshalException("unknown reason in " + name
+						+ ": " + v[1]);
+			}
+			if (reason == LoginFailureReason.OTHER) {
+				require(v, 3, e);
+			}
+			return new SimuMetadata.LoginFailure(type, reason, v[2], v[3]);
+		case LOGIN_SUCCESS:
+			return new SimuMetadata.LoginSuccess(credentialType(v, 1, e), v[1]);
+		case FILE_STATUS:
+			return new SimuMetadata.FileStatus(v[0], v[1], v[2]);
+		default:
+			throw new UnmarshalException("unknown SIMU metadatum: " + name);
+		}
+	}
+
+	private static SimuIdentifier readIdentifier(XMLStreamReader r)
+			throws XMLStreamException, UnmarshalException {
+		r.nextTag();
+		String name = r.getLocalName();
+		if (!SimuMetaDataFactory.SIMU_IDENTIFIER_URI.equals(r
+				.getNamespaceURI())) {
+			throw new UnmarshalException("not a SIMU identifier: {"
+					+ r.getNamespaceURI() + "}" + name);
+		}
+
+		SimuElement e = SimuElement.forName(false, name);
+		// implementations used to be created as vulnerability elements
+		if (e == SimuElement.VULNERABILITY
+				&& r.getAttributeValue(null, "name") != null) {
+			e = SimuElement.IMPLEMENTATION;
+		}
+		if (e == null) {
+			throw new UnmarshalException("unknown SIMU identifier: " + name);
+		}
+
+		String[] v = readAttributes(r, name, e);
+		switch (e) {
+		case VULNERABILITY:
+			return new SimuIdentifier.Vulnerability(v[0], v[1], parseFloat(v,
+					2, e));
+		case IMPLEMENTATION:
+			return new SimuIdentifier.Implementation(v[0], v[1], v[2], v[3]);
+		case SERVICE:
+			int port;
+			try {
+				port = Integer.parseInt(v[2]);
+			} catch (NumberFormatException ex) {
+				throw new UnmarshalException("invalid port in " + name + ": "
+						+ v[2]);
+			}
+			return new SimuIdentifier.Service(v[0], v[1], port, v[3]);
+		case FILE:
+			return new SimuIdentifier.FileIdentifier(v[0], v[1]);
+		default:
+			throw new UnmarshalException("unknown SIMU identifier: " + name);
+		}
+	}
+
+	/**
+	 * Reading the text of the child elements of the current element, leaving
+	 * the reader at its end tag
+	 *
+	 * @param element
+	 *            schema of the current element
+	 * @return text per field, null for absent ones; mandatory fields are
+	 *         checked
+	 */
+	private static String[] readChildren(XMLStreamReader r, SimuElement element)
+			throws XMLStreamException, UnmarshalException {
+		String[] values = new String[element.getFieldCount()];
+		while (r.nextTag() == XMLStreamConstants.START_ELEMENT) {
+			String ns = r.getNamespaceURI();
+			int i = element.indexOf(r.getLocalName());
+			if ((ns != null && !ns.isEmpty()) || i < 0) {
+				throw new UnmarshalException("unexpected element "
+						+ r.getName() + " in " + element.getName());
+			}
+			if (values[i] != null) {
+				throw new UnmarshalException("duplicate "
+						+ element.getFieldName(i) + " in " + element.getName());
+			}
+			values[i] = r.getElementText();
+		}
+		requireAll(values, element);
+		return values;
+	}
+
+	/**
+	 * Reading the attributes of the current element, which must be empty
+	 *
+	 * @param element
+	 *            local name of the current element
+	 * @param schema
+	 *            schema the attributes are read with
+	 * @return value per field, null for absent ones; mandatory fields are
+	 *         checked
+	 */
+	private static String[] readAttributes(XMLStreamReader r, String element,
+			SimuElement schema) throws XMLStreamException, UnmarshalException {
+		String[] values = new String[schema.getFieldCount()];
+		for (int a = 0; a < r.getAttributeCount(); a++) {
+			String ns = r.getAttributeNamespace(a);
+			int i = schema.indexOf(r.getAttributeLocalName(a));
+			if ((ns != null && !ns.isEmpty()) || i < 0) {
+				throw new UnmarshalException("unexpected attribute "
+						+ r.getAttributeName(a) + " in " + element);
+			}
+			values[i] = r.getAttributeValue(a);
+		}
+		if (r.nextTag() != XMLStreamConstants.END_ELEMENT) {
+			throw new UnmarshalException("unexpected element " + r.getName()
+					+ " in " + element);
+		}
+		requireAll(values, schema);
+		return values;
+	}
+
+	/**
+	 * Reading the credential type from the first value
+	 *
+	 * @param definition
+	 *            index of the definition required for OTHER
+	 */
+	private static CredentialType credentialType(String[] v, int definition,
+			SimuElement element) throws UnmarshalException {
+		CredentialType type = CredentialType.forName(v[0]);
+		if (type == null) {
+			throw new UnmarshalException("unknown credential-type in "
+					+ element.getName() + ": " + v[0]);
+		}
+		if (type == CredentialType.OTHER) {
+			require(v, definition, element);
+		}
+		return type;
+	}
+
+	private static void requireAll(String[] values, SimuElement element)
+			throws UnmarshalException {
+		for (int i = 0; i < values.length; i++) {
+			if (element.isRequired(i)) {
+				require(values, i, element);
+			}
+		}
+	}
+
+	private static void require(String[] values, int i, SimuElement element)
+			throws UnmarshalException {
+		if (values[i] == null) {
+			throw new UnmarshalException("missing " + element.getFieldName(i)
+					+ " in " + element.getName());
+		}
+	}
+
+	private static Float parseFloat(String[] values, int i, SimuElement element)
+			throws UnmarshalException {
+		if (values[i] == null) {
+			return null;
+		}
+		try {
+			return Float.valueOf(values[i]);
+		} catch (NumberFormatException e) {
+			throw new UnmarshalException("invalid " + element.getFieldName(i)
+					+ " in " + element.getName() + ": " + values[i]);
+		}
+	}
+
+	/**
+	 * Reverting the escaping ifmapj applies to extended identifier names.
+	 * Besides the references, ifmapj stores every character above U+00A0 as
+	 * one char per UTF-8 byte. Runs of raw chars in 0x80-0xFF are therefore
+	 * decoded as UTF-8; runs that are no valid UTF-8 are kept as they are.
+	 */
+	static String unescape(String s) throws UnmarshalException {
+		int first = 0;
+		while (first < s.length() && s.charAt(first) != '&'
+				&& !isByte(s.charAt(first))) {
+			first++;
+		}
+		if (first == s.length()) {
+			return s;
+		}
+		StringBuilder sb = new StringBuilder(s.length());
+		sb.append(s, 0, first);
+		for (int i = first; i < s.length(); i++) {
+			char c = s.charAt(i);
+			if (isByte(c)) {
+				i = decodeUtf8(s, i, sb);
+				continue;
+			}
+			if (c != '&') {
+				sb.append(c);
+				continue;
+			}
+			int end = s.indexOf(';', i);
+			if (end < 0) {
+				throw new UnmarshalException("unterminated reference in " + s);
+			}
+			String ref = s.substring(i + 1, end);
+			switch (ref) {
+			case "lt":
+				sb.append('<');
+				break;
+			case "gt":
+				sb.append('>');
+				break;
+			case "amp":
+				sb.append('&');
+				break;
+			case "quot":
+				sb.append('"');
+				break;
+			case "apos":
+				sb.append('\'');
+				break;
+			default:
+				try {
+					if (ref.startsWith("#x")) {
+						sb.appendCodePoint(Integer.parseInt(ref.substring(2),
+								16));
+					} else if (ref.startsWith("#")) {
+						sb.appendCodePoint(Integer.parseInt(ref.substring(1)));
+					} else {
+						throw new UnmarshalException("unknown reference &"
+								+ ref + "; in " + s);
+					}
+				} catch (IllegalArgumentException e) {
+					throw new UnmarshalException("invalid reference &" + ref
+							+ "; in " + s);
+				}
+			}
+			i = end;
+		}
+		return sb.toString();
+	}
+
+	private static boolean isByte(char c) {
+		return c >= 0x80 && c <= 0xFF;
+	}
+
+	/**
+	 * Decoding the run of raw UTF-8 bytes starting at index start
+	 * 
+	 * @return index of the last char of the run
+	 */
+	private static int decodeUtf8(String s, int start, StringBuilder sb) {
+		int end = start;
+		while (end < s.length() && isByte(s.charAt(end))) {
+			end++;
+		}
+		byte[] bytes = new byte[end - start];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) s.charAt(start + i);
+		}
+		try {
+			sb.append(XmlFragment.UTF8.newDecoder().decode(
+					ByteBuffer.wrap(bytes)));
+		} catch (CharacterCodingException e) {
+			sb.append(s, start, end);
+		}
+		return end - 1;
+	}
+
+	private static XMLStreamReader open(Reader reader)
+			throws XMLStreamException {
+		INPUT_FACTORY_LOCK.lock();
+		try {
+			return INPUT_FACTORY.createXMLStreamReader(reader);
+		} finally {
+			INPUT_FACTORY_LOCK.unlock();
+		}
+	}
+
+	private static XMLStreamReader open(InputStream in)
+			throws XMLStreamException {
+		INPUT_FACTORY_LOCK.lock();
+		try {
+			return INPUT_FACTORY.createXMLStreamReader(in);
+		} finally {
+			INPUT_FACTORY_LOCK.unlock();
+		}
+	}
+
+	private static void close(XMLStreamReader r) {
+		if (r != null) {
+			try {
+				r.close();
+			} catch (XMLStreamException e) {
+				// nothing to release
+			}
+		}
+	}
+}
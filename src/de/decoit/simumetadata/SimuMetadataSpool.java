@@ -0,0 +1,640 @@
+/*
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.simumetadata;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+import de.hshannover.f4.trust.ifmapj.exception.UnmarshalException;
+
+/**
+ * Append-only spool keeping {@link SimuMetadata} awaiting publication in
+ * memory-mapped segment files instead of the heap. Metadata are stored as
+ * {@link SimuBinaryCodec} records.
+ *
+ * Every segment file starts with a header holding its sequence number,
+ * followed by records of the form [length][checksum][payload], aligned to four
+ * bytes. The checksum covers the payload and the sequence number, so torn
+ * writes and leftovers of a recycled file end the segment on recovery.
+ * Committed records are marked by negating their length in place.
+ *
+ * {@link #poll(int)} hands out batches that are only marked as consumed by
+ * {@link Batch#commit()}; batches not committed before a crash are read again
+ * after the spool is reopened. {@link #drainTo(Collection, int)} commits
+ * immediately. Records that cannot be decoded are marked as consumed when
+ * they are reached and counted in {@link #getCorruptCount()}. Segments whose
+ * records are all committed are recycled.
+ * Committed records reach the disk when the operating system writes the
+ * mapped pages back or when {@link #sync()} is called.
+ *
+ * All methods are thread-safe.
+ *
+ * @author DECOIT GmbH
+ *
+ */
+public class SimuMetadataSpool implements Closeable {
+
+	/**
+	 * Default size of a segment file, 16 MiB
+	 */
+	public static final int DEFAULT_SEGMENT_SIZE = 16 << 20;
+
+	private static final int MIN_SEGMENT_SIZE = 4096;
+	private static final int MAGIC = 0x53494D55;
+	private static final int HEADER_SIZE = 16;
+	private static final int RECORD_HEADER_SIZE = 8;
+	private static final int MAX_FREE_SEGMENTS = 2;
+	private static final String PREFIX = "spool-";
+	private static final String SUFFIX = ".seg";
+
+	private final File mDirectory;
+	private final int mSegmentSize;
+	private final int mMaxSegments;
+	private final ReentrantLock mLock = new ReentrantLock();
+	private final List<Segment> mSegments = new ArrayList<Segment>();
+	private final ArrayDeque<Segment> mFree = new ArrayDeque<Segment>();
+	private Segment mReadSegment;
+	private int mReadOffset;
+	private long mNextSeq;
+	private long mPending;
+	private long mCorrupt;
+	private boolean mClosed;
+
+	/**
+	 * Constructor for an unbounded spool with the default segment size
+	 *
+	 * @param directory
+	 *            directory holding the segment files, created if missing
+	 * @throws IOException
+	 *             if the directory or existing segments cannot be accessed
+	 */
+	public SimuMetadataSpool(File directory) throws IOException {
+		this(directory, DEFAULT_SEGMENT_SIZE, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Constructor. Segments left by an earlier instance are recovered.
+	 *
+	 * @param directory
+	 *            directory holding the segment files, created if missing
+	 * @param segmentSize
+	 *            size of a segment file in bytes, at least 4096
+	 * @param maxSegments
+	 *            maximum number of segments holding uncommitted records
+	 * @throws IOException
+	 *             if the directory or existing segments cannot be accessed
+	 */
+	public SimuMetadataSpool(File directory, int segmentSize, int maxSegments)
+			throws IOException {
+		if (segmentSize < MIN_SEGMENT_SIZE) {
+			throw new IllegalArgumentException("segmentSize must be at least "
+					+ MIN_SEGMENT_SIZE);
+		}
+		if (maxSegments < 1) {
+			throw new IllegalArgumentException("maxSegments must be positive");
+		}
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("cannot create " + directory);
+		}
+		mDirectory = directory;
+		mSegmentSize = segmentSize;
+		mMaxSegments = maxSegments;
+		recover();
+	}
+
+	/**
+	 * Appending a metadatum
+	 *
+	 * @param metadata
+	 *            metadatum to append
+	 * @return false if the spool holds maxSegments segments and the record
+	 *         does not fit into the last one
+	 * @throws IOException
+	 *             if the spool is closed or a segment cannot be created
+	 * @throws IllegalArgumentException
+	 *             if the record is larger than a segment or a value contains
+	 *             an unpaired surrogate
+	 */
+	public boolean append(SimuMetadata metadata) throws IOException {
+		byte[] payload = SimuBinaryCodec.encode(metadata);
+		int recordSize = recordSize(payload.length);
+		if (recordSize > mSegmentSize - HEADER_SIZE) {
+			throw new IllegalArgumentException("record of " + payload.length
+					+ " bytes does not fit into a segment");
+		}
+		int checksum = checksum(payload, payload.length);
+
+		mLock.lock();
+		try {
+			checkOpen();
+			Segment segment = writeSegment(recordSize);
+			if (segment == null) {
+				return false;
+			}
+			segment.append(payload, checksum ^ segment.mSalt);
+			mPending++;
+			return true;
+		} finally {
+			mLock.unlock();
+		}
+	}
+
+	/**
+	 * Taking the oldest records not handed out yet. The records stay in the
+	 * spool until the batch is committed. Records that cannot be decoded are
+	 * skipped and dropped.
+	 *
+	 * @param max
+	 *            maximum number of records
+	 * @return batch, possibly empty
+	 * @throws IOException
+	 *             if the spool is closed
+	 */
+	public Batch poll(int max) throws IOException {
+		List<SimuMetadata> metadata = new ArrayList<SimuMetadata>(Math.min(
+				max, 256));
+		List<Segment> segments = new ArrayList<Segment>(metadata.size());
+		int[] offsets = new int[16];
+
+		mLock.lock();
+		try {
+			checkOpen();
+			while (metadata.size() < max && mReadSegment != null) {
+				Segment segment = mReadSegment;
+				if (mReadOffset >= segment.mWritePos) {
+					int next = mSegments.indexOf(segment) + 1;
+					if (!segment.mSealed || next == mSegments.size()) {
+						break;
+					}
+					mReadSegment = mSegments.get(next);
+					mReadOffset = HEADER_SIZE;
+					continue;
+				}
+				int offset = mReadOffset;
+				int length = segment.mBuffer.getInt(offset);
+				mReadOffset += recordSize(Math.abs(length));
+				if (length <= 0) {
+					continue;
+				}
+				SimuMetadata record;
+				try {
+					record = segment.read(offset, length);
+				} catch (UnmarshalException e) {
+					skip(segment, offset);
+					continue;
+				}
+				if (offsets.length == segments.size()) {
+					offsets = Arrays.copyOf(offsets, offsets.length * 2);
+				}
+				offsets[segments.size()] = offset;
+				segments.add(segment);
+				metadata.add(record);
+			}
+		} finally {
+			mLock.unlock();
+		}
+		return new Batch(metadata, segments, offsets);
+	}
+
+	/**
+	 * Moving the oldest records not handed out yet to a collection and
+	 * committing them at once
+	 *
+	 * @param target
+	 *            collection to add the metadata to
+	 * @param max
+	 *            maximum number of records
+	 * @return number of records moved
+	 * @throws IOException
+	 *             if the spool is closed
+	 */
+	public int drainTo(Collection<? super SimuMetadata> target, int max)
+			throws IOException {
+		Batch batch = poll(max);
+		batch.commit();
+		target.addAll(batch.getMetadata());
+		return batch.getMetadata().size();
+	}
+
+	/**
+	 * @return number of records not committed yet
+	 */
+	public long getPendingCount() {
+		mLock.lock();
+		try {
+			return mPending;
+		} finally {
+			mLock.unlock();
+		}
+	}
+
+	/**
+	 * @return number of records dropped because they could not be decoded
+	 */
+	public long getCorruptCount() {
+		mLock.lock();
+		try {
+			return mCorrupt;
+		} finally {
+			mLock.unlock();
+		}
+	}
+
+	/**
+	 * @return number of segments holding uncommitted records or taking
+	 *         appends
+	 */
+	public int getSegmentCount() {
+		mLock.lock();
+		try {
+			return mSegments.size();
+		} finally {
+			mLock.unlock();
+		}
+	}
+
+	/**
+	 * Forcing appended records and commit marks to the disk
+	 *
+	 * @throws IOException
+	 *             if the spool is closed
+	 */
+	public void sync() throws IOException {
+		mLock.lock();
+		try {
+			checkOpen();
+			for (Segment segment : mSegments) {
+				segment.mBuffer.force();
+			}
+		} finally {
+			mLock.unlock();
+		}
+	}
+
+	/**
+	 * Syncing and closing the spool. The segment files are kept for the next
+	 * instance; the mappings are released once they are garbage collected.
+	 */
+	@Override
+	public void close() throws IOException {
+		mLock.lock();
+		try {
+			if (mClosed) {
+				return;
+			}
+			sync();
+			mClosed = true;
+			mSegments.clear();
+			mFree.clear();
+			mReadSegment = null;
+		} finally {
+			mLock.unlock();
+		}
+	}
+
+	private void checkOpen() throws IOException {
+		if (mClosed) {
+			throw new IOException("spool is closed");
+		}
+	}
+
+	private void commit(Batch batch) throws IOException {
+		mLock.lock();
+		try {
+			checkOpen();
+			if (batch.mCommitted) {
+				return;
+			}
+			batch.mCommitted = true;
+			Segment last = null;
+			for (int i = 0; i < batch.mSegments.size(); i++) {
+				Segment segment = batch.mSegments.get(i);
+				int offset = batch.mOffsets[i];
+				segment.mBuffer.putInt(offset,
+						-segment.mBuffer.getInt(offset));
+				segment.mPending--;
+				mPending--;
+				if (last != null && last != segment) {
+					recycleIfDone(last);
+				}
+				last = segment;
+			}
+			if (last != null) {
+				recycleIfDone(last);
+			}
+		} finally {
+			mLock.unlock();
+		}
+	}
+
+	/**
+	 * Marking a record that cannot be decoded as consumed, so later polls
+	 * move past it
+	 */
+	private void skip(Segment segment, int offset) throws IOException {
+		segment.mBuffer.putInt(offset, -segment.mBuffer.getInt(offset));
+		segment.mPending--;
+		mPending--;
+		mCorrupt++;
+		recycleIfDone(segment);
+	}
+
+	/**
+	 * @return segment with room for the record, null if the spool is full.
+	 *         The last segment is only sealed once its successor exists, so
+	 *         it keeps taking smaller records while the spool is full.
+	 */
+	private Segment writeSegment(int recordSize) throws IOException {
+		Segment last = mSegments.isEmpty() ? null : mSegments.get(mSegments
+				.size() - 1);
+		boolean open = last != null && !last.mSealed;
+		if (open && last.mBuffer.capacity() - last.mWritePos >= recordSize) {
+			return last;
+		}
+		// sealing a fully committed last segment frees its slot
+		if (mSegments.size() >= mMaxSegments && !(open && last.mPending == 0)) {
+			return null;
+		}
+
+		long seq = mNextSeq++;
+		File file = new File(mDirectory, fileName(seq));
+		Segment segment = mFree.poll();
+		if (segment == null) {
+			segment = new Segment(file, map(file, mSegmentSize));
+		} else {
+			Files.move(segment.mFile.toPath(), file.toPath(),
+					StandardCopyOption.ATOMIC_MOVE);
+			segment.mFile = file;
+		}
+		segment.init(seq);
+		mSegments.add(segment);
+		if (mReadSegment == null) {
+			mReadSegment = segment;
+			mReadOffset = HEADER_SIZE;
+		}
+		if (open) {
+			last.mSealed = true;
+			recycleIfDone(last);
+		}
+		return segment;
+	}
+
+	private void recycleIfDone(Segment segment) throws IOException {
+		if (!segment.mSealed || segment.mPending > 0) {
+			return;
+		}
+		int index = mSegments.indexOf(segment);
+		if (index < 0) {
+			return;
+		}
+		mSegments.remove(index);
+		if (mReadSegment == segment) {
+			mReadSegment = index < mSegments.size() ? mSegments.get(index)
+					: null;
+			mReadOffset = HEADER_SIZE;
+		}
+		free(segment);
+	}
+
+	private void free(Segment segment) throws IOException {
+		if (segment.mBuffer.capacity() >= HEADER_SIZE) {
+			segment.mBuffer.putInt(0, 0);
+		}
+		if (mFree.size() < MAX_FREE_SEGMENTS
+				&& segment.mBuffer.capacity() == mSegmentSize) {
+			mFree.add(segment);
+		} else if (!segment.mFile.delete()) {
+			throw new IOException("cannot delete " + segment.mFile);
+		}
+	}
+
+	/**
+	 * Scanning the segments left by an earlier instance. Recovered segments
+	 * are sealed, new records go to a new segment.
+	 */
+	private void recover() throws IOException {
+		File[] files = mDirectory.listFiles();
+		List<Segment> found = new ArrayList<Segment>();
+		for (File file : files == null ? new File[0] : files) {
+			String name = file.getName();
+			if (!name.startsWith(PREFIX) || !name.endsWith(SUFFIX)) {
+				continue;
+			}
+			long seq;
+			try {
+				seq = Long.parseLong(name.substring(PREFIX.length(),
+						name.length() - SUFFIX.length()));
+			} catch (NumberFormatException e) {
+				continue;
+			}
+			mNextSeq = Math.max(mNextSeq, seq + 1);
+			Segment segment = new Segment(file, map(file, (int) Math.min(
+					Integer.MAX_VALUE, file.length())));
+			segment.mSeq = seq;
+			found.add(segment);
+		}
+		Collections.sort(found);
+
+		for (Segment segment : found) {
+			segment.mSealed = true;
+			if (segment.recover()) {
+				mPending += segment.mPending;
+				mSegments.add(segment);
+			} else {
+				free(segment);
+			}
+		}
+		if (!mSegments.isEmpty()) {
+			mReadSegment = mSegments.get(0);
+			mReadOffset = HEADER_SIZE;
+		}
+	}
+
+	private static MappedByteBuffer map(File file, int size)
+			throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(file, "rw");
+		try {
+			if (raf.length() < size) {
+				raf.setLength(size);
+			}
+			// the mapping stays valid after the file is closed
+			return raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0,
+					size);
+		} finally {
+			raf.close();
+		}
+	}
+
+	private static String fileName(long seq) {
+		return String.format("%s%016d%s", PREFIX, seq, SUFFIX);
+	}
+
+	private static int recordSize(int payloadLength) {
+		return RECORD_HEADER_SIZE + (payloadLength + 3 & ~3);
+	}
+
+	private static int checksum(byte[] payload, int length) {
+		CRC32 crc = new CRC32();
+		crc.update(payload, 0, length);
+		return (int) crc.getValue();
+	}
+
+	/**
+	 * Records handed out by {@link SimuMetadataSpool#poll(int)}
+	 */
+	public final class Batch {
+		private final List<SimuMetadata> mMetadata;
+		private final List<Segment> mSegments;
+		private final int[] mOffsets;
+		private boolean mCommitted;
+
+		private Batch(List<SimuMetadata> metadata, List<Segment> segments,
+				int[] offsets) {
+			mMetadata = Collections.unmodifiableList(metadata);
+			mSegments = segments;
+			mOffsets = offsets;
+		}
+
+		/**
+		 * @return metadata in the order they were appended
+		 */
+		public List<SimuMetadata> getMetadata() {
+			return mMetadata;
+		}
+
+		/**
+		 * Marking the records as consumed. Further calls have no effect.
+		 *
+		 * @throws IOException
+		 *             if the spool is closed
+		 */
+		public void commit() throws IOException {
+			SimuMetadataSpool.this.commit(this);
+		}
+	}
+
+	private static final class Segment implements Comparable<Segment> {
+		private final MappedByteBuffer mBuffer;
+		private File mFile;
+		private long mSeq;
+		private int mSalt;
+		private int mWritePos;
+		private long mPending;
+		private boolean mSealed;
+
+		Segment(File file, MappedByteBuffer buffer) {
+			mFile = file;
+			mBuffer = buffer;
+		}
+
+		/**
+		 * Preparing the segment for appends
+		 */
+		void init(long seq) {
+			mSeq = seq;
+			mSalt = salt(seq);
+			mWritePos = HEADER_SIZE;
+			mPending = 0;
+			mSealed = false;
+			mBuffer.putLong(4, seq);
+			mBuffer.putInt(0, MAGIC);
+		}
+
+		/**
+		 * Scanning the records up to the first invalid one
+		 *
+		 * @return false if the segment holds no uncommitted record
+		 */
+		boolean recover() {
+			if (mBuffer.capacity() < HEADER_SIZE
+					|| mBuffer.getInt(0) != MAGIC
+					|| mBuffer.getLong(4) != mSeq) {
+				return false;
+			}
+			mSalt = salt(mSeq);
+			int pos = HEADER_SIZE;
+			byte[] payload = new byte[256];
+			while (mBuffer.capacity() - pos >= RECORD_HEADER_SIZE) {
+				int length = mBuffer.getInt(pos);
+				int abs = Math.abs(length);
+				if (length == 0 || length == Integer.MIN_VALUE
+						|| abs > mBuffer.capacity() - pos - RECORD_HEADER_SIZE) {
+					break;
+				}
+				if (payload.length < abs) {
+					payload = new byte[Math.max(abs, payload.length * 2)];
+				}
+				mBuffer.position(pos + RECORD_HEADER_SIZE);
+				mBuffer.get(payload, 0, abs);
+				if ((checksum(payload, abs) ^ mSalt) != mBuffer.getInt(pos + 4)) {
+					break;
+				}
+				if (length > 0) {
+					mPending++;
+				}
+				pos += recordSize(abs);
+			}
+			mWritePos = pos;
+			return mPending > 0;
+		}
+
+		void append(byte[] payload, int checksum) {
+			int pos = mWritePos;
+			mBuffer.position(pos + RECORD_HEADER_SIZE);
+			mBuffer.put(payload);
+			mBuffer.putInt(pos + 4, checksum);
+			// the length makes the record visible
+			mBuffer.putInt(pos, payload.length);
+			mWritePos = pos + recordSize(payload.length);
+			mPending++;
+		}
+
+		SimuMetadata read(int pos, int length) throws UnmarshalException {
+			mBuffer.limit(pos + RECORD_HEADER_SIZE + length);
+			mBuffer.position(pos + RECORD_HEADER_SIZE);
+			try {
+				return SimuBinaryCodec.decodeMetadata(mBuffer);
+			} finally {
+				mBuffer.limit(mBuffer.capacity());
+			}
+		}
+
+		@Override
+		public int compareTo(Segment other) {
+			return mSeq < other.mSeq ? -1 : mSeq == other.mSeq ? 0 : 1;
+		}
+
+		private static int salt(long seq) {
+			long h = seq * 0x9E3779B97F4A7C15L;
+			return (int) (h ^ h >>> 32);
+		}
+	}
+}
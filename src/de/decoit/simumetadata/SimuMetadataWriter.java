@@ -0,0 +1,540 @@
+/*
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.simumetadata;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+
+/**
+ * DOM-free writer for SIMU metadata. Every write method emits the XML of one
+ * metadatum directly to the target, exactly as
+ * {@link SimuMetadataFactoryImpl#getXMLString(org.w3c.dom.Document)} would
+ * serialize the document created by the matching {@link SimuMetaDataFactory}
+ * method. Several metadata may be written back to back. The element and field
+ * tags are serialized once by {@link SimuElement}.
+ *
+ * Unlike the DOM path, values containing characters that are not allowed in
+ * XML 1.0, such as most control characters or unpaired surrogates, are
+ * rejected with an {@link IllegalArgumentException} before anything is
+ * written instead of producing a document no parser accepts.
+ *
+ * A writer is bound to its target and not thread-safe. Writers are cheap, so
+ * create one per target and thread.
+ *
+ * @author DECOIT GmbH
+ *
+ */
+public class SimuMetadataWriter {
+
+	/**
+	 * Complete login-failure metadata for every combination of credential
+	 * type and reason except OTHER, indexed by their ordinals
+	 */
+	private static final XmlFragment[][] LOGIN_FAILURES = new XmlFragment[CredentialType
+			.values().length][LoginFailureReason.values().length];
+
+	/**
+	 * Complete login-success metadata for every credential type except OTHER
+	 */
+	private static final XmlFragment[] LOGIN_SUCCESSES = new XmlFragment[CredentialType
+			.values().length];
+
+	static {
+		try {
+			for (CredentialType type : CredentialType.values()) {
+				if (type == CredentialType.OTHER) {
+					continue;
+				}
+				StringBuilder sb = new StringBuilder();
+				new SimuMetadataWriter(sb).writeLoginSuccessElement(type, null);
+				LOGIN_SUCCESSES[type.ordinal()] = new XmlFragment(sb.toString());
+
+				for (LoginFailureReason reason : LoginFailureReason.values()) {
+					if (reason == LoginFailureReason.OTHER) {
+						continue;
+					}
+					sb.setLength(0);
+					new SimuMetadataWriter(sb).writeLoginFailureElement(type,
+							reason, null, null);
+					LOGIN_FAILURES[type.ordinal()][reason.ordinal()] = new XmlFragment(
+							sb.toString());
+				}
+			}
+		} catch (IOException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private final XmlOutput mOut;
+
+	/**
+	 * Constructor for writing to a {@link StringBuilder}
+	 *
+	 * @param sb
+	 *            target builder
+	 */
+	public SimuMetadataWriter(StringBuilder sb) {
+		mOut = XmlOutput.forStringBuilder(sb);
+	}
+
+	/**
+	 * Constructor for writing to a {@link Writer}. Output is buffered, call
+	 * {@link #flush()} when done.
+	 *
+	 * @param writer
+	 *            target writer
+	 */
+	public SimuMetadataWriter(Writer writer) {
+		mOut = XmlOutput.forWriter(writer);
+	}
+
+	/**
+	 * Constructor for writing UTF-8 to an {@link OutputStream}. Output is
+	 * buffered, call {@link #flush()} when done.
+	 *
+	 * @param stream
+	 *            target stream
+	 */
+	public SimuMetadataWriter(OutputStream stream) {
+		mOut = XmlOutput.forStream(stream);
+	}
+
+	/**
+	 * Constructor for writing UTF-8 into a {@link ByteBuffer}, starting at its
+	 * current position. Characters are encoded straight into the buffer, which
+	 * may be a direct one or taken from a {@link SimuBufferPool}. If a
+	 * metadatum does not fit, a {@link java.nio.BufferOverflowException} is
+	 * thrown and the buffer position is reset to the start of that metadatum.
+	 *
+	 * @param buffer
+	 *            target buffer
+	 */
+	public SimuMetadataWriter(ByteBuffer buffer) {
+		mOut = XmlOutput.forBuffer(buffer);
+	}
+
+	/**
+	 * Pushing buffered output to the target. The target itself is not flushed.
+	 *
+	 * @throws IOException
+	 */
+	public void flush() throws IOException {
+		mOut.flush();
+	}
+
+	/**
+	 * Writing a simu:identifies-as metadatum, see
+	 * {@link SimuMetaDataFactory#createIdentifiesAs()}
+	 *
+	 * @return this writer
+	 * @throws IOException
+	 */
+	public SimuMetadataWriter writeIdentifiesAs() throws IOException {
+		return writeLink(SimuLink.IDENTIFIES_AS);
+	}
+
+	/**
+	 * Writing a simu:login-failure metadatum, see
+	 * {@link SimuMetaDataFactory#createLoginFailure(CredentialType, LoginFailureReason)}
+	 *
+	 * @param type
+	 *            credential type
+	 * @param reason
+	 *            reason why the login failed
+	 * @return this writer
+	 * @throws IOException
+	 */
+	public SimuMetadataWriter writeLoginFailure(CredentialType type,
+			LoginFailureReason reason) throws IOException {
+		return writeLoginFailure(type, reason, null, null);
+	}
+
+	/**
+	 * Writing a simu:login-failure metadatum, see
+	 * {@link SimuMetaDataFactory#createLoginFailure(CredentialType, LoginFailureReason, String, String)}
+	 *
+	 * @param type
+	 *            used credential type for login
+	 * @param reason
+	 *            reason why the login failed
+	 * @param typeDef
+	 *            Other-credential-type-definition (Optional, if type is not
+	 *            other)
+	 * @param reasonDef
+	 *            Other-reason-type-definition (Optional, if type not other)
+	 * @return this writer
+	 * @throws IOException
+	 */
+	public SimuMetadataWriter writeLoginFailure(CredentialType type,
+			LoginFailureReason reason, String typeDef, String reasonDef)
+			throws IOException {
+		XmlFragment fixed = LOGIN_FAILURES[type.ordinal()][reason.ordinal()];
+		if (fixed != null) {
+			mOut.begin();
+			mOut.write(fixed);
+			return this;
+		}
+		return writeLoginFailureElement(type, reason, typeDef, reasonDef);
+	}
+
+	private SimuMetadataWriter writeLoginFailureElement(CredentialType type,
+			LoginFailureReason reason, String typeDef, String reasonDef)
+			throws IOException {
+		SimuElement e = SimuElement.LOGIN_FAILURE;
+		String typeStr = type.toString();
+		String reasonStr = reason.toString();
+		if (type == CredentialType.OTHER) {
+			check(e, 2, typeDef);
+		}
+		if (reason == LoginFailureReason.OTHER) {
+			check(e, 3, reasonDef);
+		}
+
+		writeStart(e);
+		writeField(e, 0, typeStr);
+		writeField(e, 1, reasonStr);
+		if (type == CredentialType.OTHER) {
+			writeField(e, 2, typeDef);
+		}
+		if (reason == LoginFailureReason.OTHER) {
+			writeField(e, 3, reasonDef);
+		}
+		return writeEnd(e);
+	}
+
+	/**
+	 * Writing a simu:login-success metadatum, see
+	 * {@link SimuMetaDataFactory#createLoginSuccess(CredentialType)}
+	 *
+	 * @param type
+	 *            used credential type for login
+	 * @return this writer
+	 * @throws IOException
+	 */
+	public SimuMetadataWriter writeLoginSuccess(CredentialType type)
+			throws IOException {
+		return writeLoginSuccess(type, null);
+	}
+
+	/**
+	 * Writing a simu:login-success metadatum, see
+	 * {@link SimuMetaDataFactory#createLoginSuccess(CredentialType, String)}
+	 *
+	 * @param type
+	 *            used credential type for login
+	 * @param typeDef
+	 *            Other-credential-type-definition (Optional, if type is not
+	 *            other)
+	 * @return this writer
+	 * @throws IOException
+	 */
+	public SimuMetadataWriter writeLoginSuccess(CredentialType type,
+			String typeDef) throws IOException {
+		XmlFragment fixed = LOGIN_SUCCESSES[type.ordinal()];
+		if (fixed != null) {
+			mOut.begin();
+			mOut.write(fixed);
+			return this;
+		}
+		return writeLoginSuccessElement(type, typeDef);
+	}
+
+	private SimuMetadataWriter writeLoginSuccessElement(CredentialType type,
+			String typeDef) throws IOException {
+		SimuElement e = SimuElement.LOGIN_SUCCESS;
+		String typeStr = type.toString();
+		if (type == CredentialType.OTHER) {
+			check(e, 1, typeDef);
+		}
+
+		writeStart(e);
+		writeField(e, 0, typeStr);
+		if (type == CredentialType.OTHER) {
+			writeField(e, 1, typeDef);
+		}
+		return writeEnd(e);
+	}
+
+	/**
+	 * Writing a simu:service-ip metadatum, see
+	 * {@link SimuMetaDataFactory#createServiceIP()}
+	 *
+	 * @return this writer
+	 * @throws IOException
+	 */
+	public SimuMetadataWriter writeServiceIP() throws IOException {
+		return writeLink(SimuLink.SERVICE_IP);
+	}
+
+	/**
+	 * Writing a simu:service-discovered-by metadatum, see
+	 * {@link SimuMetaDataFactory#createServiceDiscoveredBy()}
+	 *
+	 * @return this writer
+	 * @throws IOException
+	 */
+	public SimuMetadataWriter writeServiceDiscoveredBy() throws IOException {
+		return writeLink(SimuLink.SERVICE_DISCOVERED_BY);
+	}
+
+	/**
+	 * Writing a simu:device-discovered-by metadatum, see
+	 * {@link SimuMetaDataFactory#createDeviceDiscoveredBy()}
+	 *
+	 * @return this writer
+	 * @throws IOException
+	 */
+	public SimuMetadataWriter writeDeviceDiscoveredBy() throws IOException {
+		return writeLink(SimuLink.DEVICE_DISCOVERED_BY);
+	}
+
+	/**
+	 * Writing a simu:attack-detected metadatum, see
+	 * {@link SimuMetaDataFactory#createAttackDetected(String, String, float)}
+	 *
+	 * @param type
+	 *            Type of Vulnerability (For example CVE)
+	 * @param id
+	 *            ID of Vulnerability (For example a CVE-ID)
+	 * @param severity
+	 *            severity of the attack
+	 * @return this writer
+	 * @throws IOException
+	 */
+	public SimuMetadataWriter writeAttackDetected(String type, String id,
+			float severity) throws IOException {
+		return writeAttackDetected(type, id, true, severity);
+	}
+
+	/**
+	 * Writing a simu:attack-detected metadatum
+	 *
+	 * @param severity
+	 *            severity element, null to omit it
+	 */
+	SimuMetadataWriter writeAttackDetected(String type, String id,
+			Float severity) throws IOException {
+		return writeAttackDetected(type, id, severity != null,
+				severity == null ? 0 : severity.floatValue());
+	}
+
+	private SimuMetadataWriter writeAttackDetected(String type, String id,
+			boolean hasSeverity, float severity) throws IOException {
+		SimuElement e = SimuElement.ATTACK_DETECTED;
+		check(e, 0, type);
+		check(e, 1, id);
+
+		writeStart(e);
+		writeField(e, 0, type);
+		writeField(e, 1, id);
+		if (hasSeverity) {
+			mOut.write(e.getFieldStartTag(2));
+			SimuNumbers.write(mOut, severity);
+			mOut.write(e.getFieldEndTag(2));
+		}
+		return writeEnd(e);
+	}
+
+	/**
+	 * Writing a simu:implementation-vulnerability metadatum, see
+	 * {@link SimuMetaDataFactory#createImplementationVulnerability()}
+	 *
+	 * @return this writer
+	 * @throws IOException
+	 */
+	public SimuMetadataWriter writeImplementationVulnerability()
+			throws IOException {
+		return writeLink(SimuLink.IMPLEMENTATION_VULNERABILITY);
+	}
+
+	/**
+	 * Writing a simu:service-implementation metadatum, see
+	 * {@link SimuMetaDataFactory#createServiceImplementation()}
+	 *
+	 * @return this writer
+	 * @throws IOException
+	 */
+	public SimuMetadataWriter writeServiceImplementation() throws IOException {
+		return writeLink(SimuLink.SERVICE_IMPLEMENTATION);
+	}
+
+	/**
+	 * Writing a simu:file-monitored metadatum, see
+	 * {@link SimuMetaDataFactory#createFileMonitored()}
+	 *
+	 * @return this writer
+	 * @throws IOException
+	 */
+	public SimuMetadataWriter writeFileMonitored() throws IOException {
+		return writeLink(SimuLink.FILE_MONITORED);
+	}
+
+	/**
+	 * Writing a simu:file-status metadatum, see
+	 * {@link SimuMetaDataFactory#createFileChanged(String, String, String)}
+	 *
+	 * @param kind
+	 *            File status
+	 * @param time
+	 *            discovering time
+	 * @param importance
+	 *            severity of status change
+	 * @return this writer
+	 * @throws IOException
+	 */
+	public SimuMetadataWriter writeFileChanged(String kind, String time,
+			String importance) throws IOException {
+		SimuElement e = SimuElement.FILE_STATUS;
+		check(e, 0, kind);
+		check(e, 1, time);
+		check(e, 2, importance);
+
+		writeStart(e);
+		writeField(e, 0, kind);
+		writeField(e, 1, time);
+		writeField(e, 2, importance);
+		return writeEnd(e);
+	}
+
+	/**
+	 * Writing simu:file-status metadata for a whole scan in one pass. All
+	 * columns must have the same length. Every entry is checked before
+	 * anything is written.
+	 *
+	 * @param kinds
+	 *            File status per entry
+	 * @param times
+	 *            discovering time per entry
+	 * @param importances
+	 *            severity of status change per entry
+	 * @return this writer
+	 * @throws IOException
+	 */
+	public SimuMetadataWriter writeFileChanged(String[] kinds, String[] times,
+			String[] importances) throws IOException {
+		SimuElement e = SimuElement.FILE_STATUS;
+		if (kinds.length != times.length || kinds.length != importances.length) {
+			throw new IllegalArgumentException(
+					"all columns must have the same length");
+		}
+		for (int i = 0; i < kinds.length; i++) {
+			check(e, 0, kinds[i]);
+			check(e, 1, times[i]);
+			check(e, 2, importances[i]);
+		}
+
+		for (int i = 0; i < kinds.length; i++) {
+			writeStart(e);
+			writeField(e, 0, kinds[i]);
+			writeField(e, 1, times[i]);
+			writeField(e, 2, importances[i]);
+			writeEnd(e);
+		}
+		return this;
+	}
+
+	/**
+	 * Writing a parameterless link metadatum from its pre-serialized form
+	 *
+	 * @param link
+	 *            link to write
+	 * @return this writer
+	 * @throws IOException
+	 */
+	public SimuMetadataWriter writeLink(SimuLink link) throws IOException {
+		mOut.begin();
+		mOut.write(link.getXmlFragment());
+		return this;
+	}
+
+	/**
+	 * @return pre-serialized login-failure metadatum, null if type or reason
+	 *         is OTHER
+	 */
+	static XmlFragment getLoginFailureXml(CredentialType type,
+			LoginFailureReason reason) {
+		return LOGIN_FAILURES[type.ordinal()][reason.ordinal()];
+	}
+
+	/**
+	 * @return pre-serialized login-success metadatum, null if type is OTHER
+	 */
+	static XmlFragment getLoginSuccessXml(CredentialType type) {
+		return LOGIN_SUCCESSES[type.ordinal()];
+	}
+
+	/**
+	 * Writing a metadatum value object, copying its serialized form if it was
+	 * already created
+	 *
+	 * @param metadata
+	 *            metadatum to write
+	 * @return this writer
+	 * @throws IOException
+	 */
+	public SimuMetadataWriter write(SimuMetadata metadata) throws IOException {
+		XmlFragment xml = metadata.getCachedXml();
+		if (xml == null) {
+			metadata.write(this);
+		} else {
+			mOut.begin();
+			mOut.write(xml);
+		}
+		return this;
+	}
+
+	private void writeStart(SimuElement element) throws IOException {
+		mOut.begin();
+		mOut.write(element.getStartTag());
+	}
+
+	private SimuMetadataWriter writeEnd(SimuElement element)
+			throws IOException {
+		mOut.write(element.getEndTag());
+		return this;
+	}
+
+	/**
+	 * Checking a value before anything is written, so a rejected metadatum
+	 * leaves no partial output behind
+	 *
+	 * @throws NullPointerException
+	 *             if the value is null
+	 * @throws IllegalArgumentException
+	 *             if the value contains a character not allowed in XML
+	 */
+	private static void check(SimuElement element, int field, String value) {
+		element.checkNotNull(field, value);
+		XmlChars.checkLegal(element, field, value);
+	}
+
+	/**
+	 * Writing a field element whose value was checked
+	 */
+	private void writeField(SimuElement element, int field, String value)
+			throws IOException {
+		if (value.isEmpty()) {
+			mOut.write(element.getEmptyField(field));
+			return;
+		}
+		mOut.write(element.getFieldStartTag(field));
+		mOut.writeText(value);
+		mOut.write(element.getFieldEndTag(field));
+	}
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.simumetadata;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Lock-free counters and latency histograms for the factory operations,
+ * filled by {@link MeteredSimuMetaDataFactory}. Latencies are kept in
+ * power-of-two buckets, so percentiles are reported as bucket upper bounds.
+ * Recording an operation costs a few atomic increments and no allocation.
+ *
+ * The counters can be published over JMX with {@link #registerMBean(String)}
+ * and observed through {@link SimuMetricsListener}s.
+ *
+ * @author DECOIT GmbH
+ *
+ */
+public class SimuMetrics implements SimuMetricsMBean {
+
+	private static final int BUCKETS = 64;
+	private static final SimuOperation[] OPERATIONS = SimuOperation.values();
+
+	private final AtomicLongArray mCounts = new AtomicLongArray(
+			OPERATIONS.length);
+	private final AtomicLongArray mNanos = new AtomicLongArray(
+			OPERATIONS.length);
+	private final AtomicLongArray mHistogram = new AtomicLongArray(
+			OPERATIONS.length * BUCKETS);
+	private final AtomicLong mSerializedBytes = new AtomicLong();
+	private final CopyOnWriteArrayList<SimuMetricsListener> mListeners = new CopyOnWriteArrayList<SimuMetricsListener>();
+	private volatile IdentifierCache mIdentifierCache;
+
+	/**
+	 * Recording a completed operation
+	 *
+	 * @param operation
+	 *            performed operation
+	 * @param count
+	 *            number of elements created
+	 * @param durationNanos
+	 *            duration of the whole call
+	 */
+	public void record(SimuOperation operation, int count, long durationNanos) {
+		int op = operation.ordinal();
+		mCounts.addAndGet(op, count);
+		mNanos.addAndGet(op, durationNanos);
+		long perElement = count > 1 ? durationNanos / count : durationNanos;
+		mHistogram.incrementAndGet(op * BUCKETS + bucket(perElement));
+
+		if (!mListeners.isEmpty()) {
+			for (SimuMetricsListener l : mListeners) {
+				l.operationCompleted(operation, count, durationNanos);
+			}
+		}
+	}
+
+	/**
+	 * Recording a serialized document
+	 *
+	 * @param length
+	 *            length of the UTF-8 encoded document in bytes
+	 * @param durationNanos
+	 *            duration of the serialization
+	 */
+	public void recordSerialized(int length, long durationNanos) {
+		mSerializedBytes.addAndGet(length);
+		record(SimuOperation.SERIALIZE, 1, durationNanos);
+
+		if (!mListeners.isEmpty()) {
+			for (SimuMetricsListener l : mListeners) {
+				l.documentSerialized(length);
+			}
+		}
+	}
+
+	/**
+	 * @param listener
+	 *            listener to notify about every recorded operation
+	 */
+	public void addListener(SimuMetricsListener listener) {
+		mListeners.add(listener);
+	}
+
+	/**
+	 * @param listener
+	 *            listener to remove
+	 */
+	public void removeListener(SimuMetricsListener listener) {
+		mListeners.remove(listener);
+	}
+
+	/**
+	 * @param identifierCache
+	 *            cache whose hit rate is reported, null to detach
+	 */
+	public void setIdentifierCache(IdentifierCache identifierCache) {
+		mIdentifierCache = identifierCache;
+	}
+
+	/**
+	 * Registering this instance at the platform MBean server
+	 *
+	 * @param name
+	 *            value of the name key of the object name
+	 * @return object name the instance was registered under
+	 * @throws JMException
+	 *             if the registration fails
+	 */
+	public ObjectName registerMBean(String name) throws JMException {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		ObjectName objectName = new ObjectName(
+				"de.decoit.simumetadata:type=SimuMetrics,name="
+						+ ObjectName.quote(name));
+		server.registerMBean(this, objectName);
+		return objectName;
+	}
+
+	@Override
+	public String[] getOperationNames() {
+		String[] names = new String[OPERATIONS.length];
+		for (int i = 0; i < names.length; i++) {
+			names[i] = OPERATIONS[i].name();
+		}
+		return names;
+	}
+
+	@Override
+	public long getTotalCount() {
+		long total = 0;
+		for (int i = 0; i < OPERATIONS.length; i++) {
+			total += mCounts.get(i);
+		}
+		return total;
+	}
+
+	@Override
+	public long getSerializedBytes() {
+		return mSerializedBytes.get();
+	}
+
+	@Override
+	public double getCacheHitRate() {
+		IdentifierCache cache = mIdentifierCache;
+		return cache == null ? 0 : cache.getHitRate();
+	}
+
+	@Override
+	public long getCount(String operation) {
+		return getCount(SimuOperation.valueOf(operation));
+	}
+
+	/**
+	 * @param operation
+	 *            measured operation
+	 * @return number of elements created by the operation
+	 */
+	public long getCount(SimuOperation operation) {
+		return mCounts.get(operation.ordinal());
+	}
+
+	@Override
+	public double getMeanLatencyNanos(String operation) {
+		return getMeanLatencyNanos(SimuOperation.valueOf(operation));
+	}
+
+	/**
+	 * @param operation
+	 *            measured operation
+	 * @return mean latency per element in nanoseconds, 0 if nothing was
+	 *         recorded
+	 */
+	public double getMeanLatencyNanos(SimuOperation operation) {
+		int op = operation.ordinal();
+		long count = mCounts.get(op);
+		return count == 0 ? 0 : (double) mNanos.get(op) / count;
+	}
+
+	@Override
+	public long getLatencyPercentileNanos(String operation, double percentile) {
+		return getLatencyPercentileNanos(SimuOperation.valueOf(operation),
+				percentile);
+	}
+
+	/**
+	 * @param operation
+	 *            measured operation
+	 * @param percentile
+	 *            percentile between 0 and 100
+	 * @return upper bound of the histogram bucket holding the percentile in
+	 *         nanoseconds, 0 if nothing was recorded
+	 */
+	public long getLatencyPercentileNanos(SimuOperation operation,
+			double percentile) {
+		if (percentile < 0 || percentile > 100) {
+			throw new IllegalArgumentException(
+					"percentile must be between 0 and 100");
+		}
+		int base = operation.ordinal() * BUCKETS;
+		long samples = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			samples += mHistogram.get(base + i);
+		}
+		if (samples == 0) {
+			return 0;
+		}
+		long rank = Math.max(1, (long) Math.ceil(samples * percentile / 100));
+		long seen = 0;
+		for (int i = 0; i < BUCKETS; i++) {
+			seen += mHistogram.get(base + i);
+			if (seen >= rank) {
+				return i == BUCKETS - 1 ? Long.MAX_VALUE : (1L << i) - 1;
+			}
+		}
+		return Long.MAX_VALUE;
+	}
+
+	@Override
+	public void reset() {
+		for (int i = 0; i < mCounts.length(); i++) {
+			mCounts.set(i, 0);
+			mNanos.set(i, 0);
+		}
+		for (int i = 0; i < mHistogram.length(); i++) {
+			mHistogram.set(i, 0);
+		}
+		mSerializedBytes.set(0);
+	}
+
+	/**
+	 * Bucket i holds latencies below 2^i nanoseconds and at least 2^(i-1)
+	 */
+	private static int bucket(long nanos) {
+		if (nanos <= 0) {
+			return 0;
+		}
+		return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(nanos));
+	}
+}
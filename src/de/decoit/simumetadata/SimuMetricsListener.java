@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.simumetadata;
+
+/**
+ * Listener notified by {@link SimuMetrics} about every recorded operation.
+ * Listeners are called on the thread that performed the operation and must
+ * return quickly.
+ *
+ * @author DECOIT GmbH
+ *
+ */
+public interface SimuMetricsListener {
+
+	/**
+	 * Called after an operation completed
+	 *
+	 * @param operation
+	 *            performed operation
+	 * @param count
+	 *            number of elements created, more than 1 for batch calls
+	 * @param durationNanos
+	 *            duration of the whole call
+	 */
+	public void operationCompleted(SimuOperation operation, int count,
+			long durationNanos);
+
+	/**
+	 * Called after a document was serialized
+	 *
+	 * @param length
+	 *            length of the UTF-8 encoded document in bytes
+	 */
+	public void documentSerialized(int length);
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.simumetadata;
+
+/**
+ * JMX management interface of {@link SimuMetrics}. Operations are addressed
+ * by the names of the {@link SimuOperation} constants.
+ *
+ * @author DECOIT GmbH
+ *
+ */
+public interface SimuMetricsMBean {
+
+	/**
+	 * @return names of all measured operations
+	 */
+	public String[] getOperationNames();
+
+	/**
+	 * @return number of elements created and documents serialized
+	 */
+	public long getTotalCount();
+
+	/**
+	 * @return total number of UTF-8 bytes serialized
+	 */
+	public long getSerializedBytes();
+
+	/**
+	 * @return hit rate of the identifier cache, 0 if none is attached
+	 */
+	public double getCacheHitRate();
+
+	/**
+	 * @param operation
+	 *            name of the operation
+	 * @return number of elements created by the operation
+	 */
+	public long getCount(String operation);
+
+	/**
+	 * @param operation
+	 *            name of the operation
+	 * @return mean latency per element in nanoseconds
+	 */
+	public double getMeanLatencyNanos(String operation);
+
+	/**
+	 * @param operation
+	 *            name of the operation
+	 * @param percentile
+	 *            percentile between 0 and 100
+	 * @return upper bound of the latency histogram bucket holding the
+	 *         percentile in nanoseconds
+	 */
+	public long getLatencyPercentileNanos(String operation, double percentile);
+
+	/**
+	 * Resetting all counters and histograms
+	 */
+	public void reset();
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.simumetadata;
+
+import java.io.IOException;
+
+/**
+ * Number formatting without allocation for the values the SIMU elements
+ * carry: severities, which are mostly whole tenths between 0.0 and 10.0, and
+ * ports. Output is identical to {@link Float#toString(float)} and
+ * {@link Integer#toString(int)}; other values fall back to those.
+ *
+ * @author DECOIT GmbH
+ *
+ */
+final class SimuNumbers {
+
+	private static final int MAX_TENTHS = 100;
+	private static final String[] TENTHS = new String[MAX_TENTHS + 1];
+	private static final XmlFragment[] TENTH_FRAGMENTS = new XmlFragment[MAX_TENTHS + 1];
+
+	/**
+	 * Strings of the integers 0 to 65535, created on first use. Strings are
+	 * immutable, a racing thread at worst creates an equal instance.
+	 */
+	private static final String[] INTS = new String[1 << 16];
+
+	static {
+		for (int i = 0; i <= MAX_TENTHS; i++) {
+			TENTHS[i] = Float.toString(i / 10f);
+			TENTH_FRAGMENTS[i] = new XmlFragment(TENTHS[i]);
+		}
+	}
+
+	private SimuNumbers() {
+	}
+
+	/**
+	 * @return index into the tenths tables, -1 if f is not exactly a tenth
+	 *         between 0.0 and 10.0
+	 */
+	private static int tenths(float f) {
+		if (!(f >= 0 && f <= MAX_TENTHS / 10)) {
+			return -1;
+		}
+		int tenths = Math.round(f * 10);
+		return Float.floatToRawIntBits(tenths / 10f) == Float
+				.floatToRawIntBits(f) ? tenths : -1;
+	}
+
+	/**
+	 * @param f
+	 *            value to format
+	 * @return same as {@link Float#toString(float)}, shared for tenths
+	 *         between 0.0 and 10.0
+	 */
+	static String toString(float f) {
+		int tenths = tenths(f);
+		return tenths < 0 ? Float.toString(f) : TENTHS[tenths];
+	}
+
+	/**
+	 * @param i
+	 *            value to format
+	 * @return same as {@link Integer#toString(int)}, shared for 0 to 65535
+	 */
+	static String toString(int i) {
+		if (i < 0 || i >= INTS.length) {
+			return Integer.toString(i);
+		}
+		String s = INTS[i];
+		if (s == null) {
+			s = Integer.toString(i);
+			INTS[i] = s;
+		}
+		return s;
+	}
+
+	/**
+	 * Writing a float as {@link Float#toString(float)} would format it
+	 *
+	 * @param out
+	 *            target
+	 * @param f
+	 *            value to write
+	 * @throws IOException
+	 */
+	static void write(XmlOutput out, float f) throws IOException {
+		int tenths = tenths(f);
+		if (tenths < 0) {
+			out.write(Float.toString(f));
+		} else {
+			out.write(TENTH_FRAGMENTS[tenths]);
+		}
+	}
+
+	/**
+	 * Writing the decimal digits of an int as {@link Integer#toString(int)}
+	 * would format it, most significant first and without a buffer
+	 *
+	 * @param out
+	 *            target
+	 * @param i
+	 *            value to write
+	 * @throws IOException
+	 */
+	static void write(XmlOutput out, int i) throws IOException {
+		if (i < 0) {
+			if (i == Integer.MIN_VALUE) {
+				out.write(Integer.toString(i));
+				return;
+			}
+			out.write('-');
+			i = -i;
+		}
+		int divisor = 1;
+		while (divisor <= i / 10) {
+			divisor *= 10;
+		}
+		for (; divisor > 0; divisor /= 10) {
+			out.write((char) ('0' + i / divisor % 10));
+		}
+	}
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.simumetadata;
+
+/**
+ * Enum for the factory operations measured by {@link SimuMetrics}. Metadata
+ * and identifiers are counted per element type.
+ *
+ * @author DECOIT GmbH
+ *
+ */
+public enum SimuOperation {
+	IDENTIFIES_AS, SERVICE_IP, SERVICE_DISCOVERED_BY, DEVICE_DISCOVERED_BY, IMPLEMENTATION_VULNERABILITY, SERVICE_IMPLEMENTATION, FILE_MONITORED, LOGIN_FAILURE, LOGIN_SUCCESS, ATTACK_DETECTED, FILE_STATUS, VULNERABILITY, IMPLEMENTATION, SERVICE, FILE, SERIALIZE;
+
+	/**
+	 * Operation creating a parameterless link
+	 * @param link link created
+	 * @return matching operation
+	 */
+	public static SimuOperation forLink(SimuLink link) {
+		switch (link) {
+		case IDENTIFIES_AS:
+			return IDENTIFIES_AS;
+		case SERVICE_IP:
+			return SERVICE_IP;
+		case SERVICE_DISCOVERED_BY:
+			return SERVICE_DISCOVERED_BY;
+		case DEVICE_DISCOVERED_BY:
+			return DEVICE_DISCOVERED_BY;
+		case IMPLEMENTATION_VULNERABILITY:
+			return IMPLEMENTATION_VULNERABILITY;
+		case SERVICE_IMPLEMENTATION:
+			return SERVICE_IMPLEMENTATION;
+		case FILE_MONITORED:
+			return FILE_MONITORED;
+		default:
+			throw new IllegalArgumentException("no operation for " + link);
+		}
+	}
+}
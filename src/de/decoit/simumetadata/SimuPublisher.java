@@ -0,0 +1,436 @@
+/*
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.simumetadata;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.w3c.dom.Document;
+
+import de.hshannover.f4.trust.ifmapj.channel.SSRC;
+import de.hshannover.f4.trust.ifmapj.exception.IfmapErrorResult;
+import de.hshannover.f4.trust.ifmapj.exception.IfmapException;
+import de.hshannover.f4.trust.ifmapj.identifier.Identifier;
+import de.hshannover.f4.trust.ifmapj.messages.PublishElement;
+import de.hshannover.f4.trust.ifmapj.messages.PublishRequest;
+import de.hshannover.f4.trust.ifmapj.messages.Requests;
+
+/**
+ * Asynchronous publisher batching the metadata created by the factory into
+ * multi-element publish requests. Elements are collected in a bounded queue;
+ * a batching thread closes a request when it holds batchSize elements or
+ * maxDelay has passed since its first element, and a sending thread publishes
+ * it on the {@link SSRC} while the next request is being collected. When the
+ * server falls behind, the request queue fills up, then the element queue, and
+ * {@link #publish(PublishElement)} blocks the producers.
+ *
+ * The SSRC must have an open session and is used by the sending thread only.
+ * Failed requests are reported to the {@link Callback}; elements are not
+ * retried. Use {@link LocalMapServer} to run the publisher without a MAP
+ * server.
+ *
+ * @author DECOIT GmbH
+ *
+ */
+public class SimuPublisher implements Closeable {
+
+	/**
+	 * Notified by the sending thread about every request
+	 */
+	public interface Callback {
+
+		/**
+		 * Called after a request was accepted by the server
+		 *
+		 * @param request
+		 *            published request
+		 */
+		public void published(PublishRequest request);
+
+		/**
+		 * Called after the server rejected a request or could not be reached
+		 *
+		 * @param request
+		 *            failed request
+		 * @param e
+		 *            cause of the failure
+		 */
+		public void failed(PublishRequest request, Exception e);
+	}
+
+	/**
+	 * Default capacity of the element queue
+	 */
+	public static final int DEFAULT_QUEUE_CAPACITY = 10000;
+
+	/**
+	 * Default maximum number of elements per request
+	 */
+	public static final int DEFAULT_BATCH_SIZE = 100;
+
+	/**
+	 * Default maximum time an element waits for its request to fill up, in
+	 * milliseconds
+	 */
+	public static final long DEFAULT_MAX_DELAY = 50;
+
+	private static final int PIPELINE_DEPTH = 2;
+
+	private final SSRC mSsrc;
+	private final int mBatchSize;
+	private final long mMaxDelayNanos;
+	private final Callback mCallback;
+	private final BlockingQueue<PublishElement> mQueue;
+	private final BlockingQueue<PublishRequest> mRequests = new ArrayBlockingQueue<PublishRequest>(
+			PIPELINE_DEPTH);
+	private final PublishRequest mEnd = Requests.createPublishReq();
+	private final Thread mBatcher;
+	private final Thread mSender;
+	private final AtomicInteger mProducers = new AtomicInteger();
+	private final AtomicLong mAccepted = new AtomicLong();
+	private final AtomicLong mRequestCount = new AtomicLong();
+	private final AtomicLong mFailedCount = new AtomicLong();
+	private final ReentrantLock mLock = new ReentrantLock();
+	private final Condition mCompletion = mLock.newCondition();
+	private long mCompleted;
+	private volatile boolean mClosed;
+
+	/**
+	 * Constructor using the default queue capacity, batch size and delay
+	 *
+	 * @param ssrc
+	 *            channel with an open session
+	 */
+	public SimuPublisher(SSRC ssrc) {
+		this(ssrc, DEFAULT_QUEUE_CAPACITY, DEFAULT_BATCH_SIZE,
+				DEFAULT_MAX_DELAY, TimeUnit.MILLISECONDS, null);
+	}
+
+	/**
+	 * Constructor, starting the batching and sending threads
+	 *
+	 * @param ssrc
+	 *            channel with an open session
+	 * @param queueCapacity
+	 *            maximum number of elements waiting for a request
+	 * @param batchSize
+	 *            maximum number of elements per request
+	 * @param maxDelay
+	 *            maximum time an element waits for its request to fill up
+	 * @param unit
+	 *            unit of maxDelay
+	 * @param callback
+	 *            callback notified about every request, null to print
+	 *            failures only
+	 */
+	public SimuPublisher(SSRC ssrc, int queueCapacity, int batchSize,
+			long maxDelay, TimeUnit unit, Callback callback) {
+		if (queueCapacity < 1 || batchSize < 1) {
+			throw new IllegalArgumentException(
+					"queueCapacity and batchSize must be positive");
+		}
+		if (maxDelay < 0) {
+			throw new IllegalArgumentException("maxDelay must not be negative");
+		}
+		mSsrc = ssrc;
+		mBatchSize = batchSize;
+		mMaxDelayNanos = unit.toNanos(maxDelay);
+		mCallback = callback;
+		mQueue = new ArrayBlockingQueue<PublishElement>(queueCapacity);
+
+		mBatcher = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				batch();
+			}
+		}, "SimuPublisher-batcher");
+		mSender = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				send();
+			}
+		}, "SimuPublisher-sender");
+		mBatcher.setDaemon(true);
+		mSender.setDaemon(true);
+		mBatcher.start();
+		mSender.start();
+	}
+
+	/**
+	 * Queueing an update of metadata on an identifier
+	 *
+	 * @param identifier
+	 *            identifier to attach the metadatum to
+	 * @param metadata
+	 *            metadatum created by the factory
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for queue space
+	 */
+	public void publishUpdate(Identifier identifier, Document metadata)
+			throws InterruptedException {
+		publish(Requests.createPublishUpdate(identifier, metadata));
+	}
+
+	/**
+	 * Queueing an update of metadata on a link
+	 *
+	 * @param identifier1
+	 *            first identifier of the link
+	 * @param identifier2
+	 *            second identifier of the link
+	 * @param metadata
+	 *            metadatum created by the factory
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for queue space
+	 */
+	public void publishUpdate(Identifier identifier1, Identifier identifier2,
+			Document metadata) throws InterruptedException {
+		publish(Requests.createPublishUpdate(identifier1, identifier2,
+				metadata));
+	}
+
+	/**
+	 * Queueing a publish element, waiting for queue space if necessary
+	 *
+	 * @param element
+	 *            element to publish
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for queue space
+	 * @throws IllegalStateException
+	 *             if the publisher is closed
+	 */
+	public void publish(PublishElement element) throws InterruptedException {
+		mProducers.incrementAndGet();
+		try {
+			checkOpen();
+			mQueue.put(element);
+			mAccepted.incrementAndGet();
+		} finally {
+			mProducers.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Queueing a publish element if queue space becomes available in time
+	 *
+	 * @param element
+	 *            element to publish
+	 * @param timeout
+	 *            maximum time to wait for queue space
+	 * @param unit
+	 *            unit of timeout
+	 * @return false if the queue stayed full
+	 * @throws InterruptedException
+	 *             if interrupted while waiting for queue space
+	 * @throws IllegalStateException
+	 *             if the publisher is closed
+	 */
+	public boolean offer(PublishElement element, long timeout, TimeUnit unit)
+			throws InterruptedException {
+		mProducers.incrementAndGet();
+		try {
+			checkOpen();
+			if (!mQueue.offer(element, timeout, unit)) {
+				return false;
+			}
+			mAccepted.incrementAndGet();
+			return true;
+		} finally {
+			mProducers.decrementAndGet();
+		}
+	}
+
+	/**
+	 * Waiting until every element queued before the call was published or
+	 * reported as failed
+	 *
+	 * @throws InterruptedException
+	 *             if interrupted while waiting
+	 */
+	public void flush() throws InterruptedException {
+		long target = mAccepted.get();
+		mLock.lock();
+		try {
+			while (mCompleted < target) {
+				mCompletion.await();
+			}
+		} finally {
+			mLock.unlock();
+		}
+	}
+
+	/**
+	 * Publishing the queued elements and stopping the threads. The SSRC is
+	 * left open.
+	 */
+	@Override
+	public void close() {
+		mClosed = true;
+		boolean interrupted = false;
+		while (mSender.isAlive()) {
+			try {
+				mSender.join();
+			} catch (InterruptedException e) {
+				interrupted = true;
+			}
+		}
+		if (interrupted) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * @return number of elements waiting for a request
+	 */
+	public int getQueuedCount() {
+		return mQueue.size();
+	}
+
+	/**
+	 * @return number of requests sent, including failed ones
+	 */
+	public long getRequestCount() {
+		return mRequestCount.get();
+	}
+
+	/**
+	 * @return number of failed requests
+	 */
+	public long getFailedCount() {
+		return mFailedCount.get();
+	}
+
+	private void checkOpen() {
+		if (mClosed) {
+			throw new IllegalStateException("publisher is closed");
+		}
+	}
+
+	/**
+	 * Body of the batching thread
+	 */
+	private void batch() {
+		long idleWait = Math.max(mMaxDelayNanos,
+				TimeUnit.MILLISECONDS.toNanos(10));
+		try {
+			while (!mClosed || mProducers.get() > 0 || !mQueue.isEmpty()) {
+				PublishElement first = mQueue.poll(idleWait,
+						TimeUnit.NANOSECONDS);
+				if (first == null) {
+					continue;
+				}
+				List<PublishElement> batch = new ArrayList<PublishElement>(
+						mBatchSize);
+				batch.add(first);
+				long deadline = System.nanoTime() + mMaxDelayNanos;
+				while (batch.size() < mBatchSize) {
+					mQueue.drainTo(batch, mBatchSize - batch.size());
+					long remaining = deadline - System.nanoTime();
+					if (batch.size() >= mBatchSize || remaining <= 0) {
+						break;
+					}
+					PublishElement next = mQueue.poll(remaining,
+							TimeUnit.NANOSECONDS);
+					if (next == null) {
+						break;
+					}
+					batch.add(next);
+				}
+				mRequests.put(Requests.createPublishReq(batch));
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			boolean queued = false;
+			while (!queued) {
+				try {
+					mRequests.put(mEnd);
+					queued = true;
+				} catch (InterruptedException e) {
+					// the sender has to stop in any case
+				}
+			}
+		}
+	}
+
+	/**
+	 * Body of the sending thread
+	 */
+	private void send() {
+		while (true) {
+			PublishRequest request;
+			try {
+				request = mRequests.take();
+			} catch (InterruptedException e) {
+				continue;
+			}
+			if (request == mEnd) {
+				return;
+			}
+			Exception failure = null;
+			try {
+				mSsrc.publish(request);
+			} catch (IfmapErrorResult e) {
+				failure = e;
+			} catch (IfmapException e) {
+				failure = e;
+			} catch (RuntimeException e) {
+				failure = e;
+			}
+			mRequestCount.incrementAndGet();
+			if (failure != null) {
+				mFailedCount.incrementAndGet();
+			}
+			report(request, failure);
+			complete(request.getPublishElements().size());
+		}
+	}
+
+	private void report(PublishRequest request, Exception failure) {
+		try {
+			if (mCallback == null) {
+				if (failure != null) {
+					failure.printStackTrace();
+				}
+			} else if (failure == null) {
+				mCallback.published(request);
+			} else {
+				mCallback.failed(request, failure);
+			}
+		} catch (RuntimeException e) {
+			e.printStackTrace();
+		}
+	}
+
+	private void complete(int elements) {
+		mLock.lock();
+		try {
+			mCompleted += elements;
+			mCompletion.signalAll();
+		} finally {
+			mLock.unlock();
+		}
+	}
+}
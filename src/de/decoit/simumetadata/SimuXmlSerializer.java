@@ -0,0 +1,315 @@
+/*
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.simumetadata;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+
+/**
+ * Single pass serializer for SIMU metadata documents. Writes the documents
+ * created by {@link SimuMetaDataFactory} directly to a {@link Writer},
+ * {@link OutputStream} or {@link ByteBuffer} without an intermediate string.
+ * The output is the one {@link SimuMetadataFactoryImpl#getXMLString(Document)}
+ * produced with the JDK identity Transformer: no XML declaration and no line
+ * feeds. The one deliberate difference are values with unpaired surrogates,
+ * which are rejected with an {@link IOException}; the Transformer dropped a
+ * high surrogate ending a value and wrote a lone low surrogate as a character
+ * reference no parser accepts.
+ *
+ * Documents containing nodes the factory never creates (comments, CDATA
+ * sections, explicit namespace declarations, ...) are handed to a cached
+ * Transformer instead.
+ *
+ * @author DECOIT GmbH
+ *
+ */
+public final class SimuXmlSerializer {
+
+	private static final TransformerFactory TRANSFORMER_FACTORY = TransformerFactory
+			.newInstance();
+	private static final ReentrantLock TRANSFORMER_LOCK = new ReentrantLock();
+
+	private SimuXmlSerializer() {
+	}
+
+	/**
+	 * Serialize a document to a String
+	 *
+	 * @param doc
+	 *            document to serialize
+	 * @return XML string
+	 * @throws IOException
+	 *             if the document cannot be serialized
+	 */
+	public static String toXmlString(Document doc) throws IOException {
+		StringBuilder sb = new StringBuilder(256);
+		serialize(doc, XmlOutput.forStringBuilder(sb));
+		return sb.toString();
+	}
+
+	/**
+	 * Serialize a document to a {@link Writer}
+	 *
+	 * @param doc
+	 *            document to serialize
+	 * @param writer
+	 *            target writer, not flushed or closed
+	 * @throws IOException
+	 *             if the document cannot be serialized or written
+	 */
+	public static void serialize(Document doc, Writer writer)
+			throws IOException {
+		XmlOutput out = XmlOutput.forWriter(writer);
+		serialize(doc, out);
+		out.flush();
+	}
+
+	/**
+	 * Serialize a document UTF-8 encoded to an {@link OutputStream}
+	 *
+	 * @param doc
+	 *            document to serialize
+	 * @param stream
+	 *            target stream, not flushed or closed
+	 * @throws IOException
+	 *             if the document cannot be serialized or written
+	 */
+	public static void serialize(Document doc, OutputStream stream)
+			throws IOException {
+		XmlOutput out = XmlOutput.forStream(stream);
+		serialize(doc, out);
+		out.flush();
+	}
+
+	/**
+	 * Serialize a document UTF-8 encoded into a {@link ByteBuffer}, starting
+	 * at its current position. Characters are encoded straight into the
+	 * buffer, which may be a direct one.
+	 *
+	 * @param doc
+	 *            document to serialize
+	 * @param buffer
+	 *            target buffer
+	 * @throws IOException
+	 *             if the document cannot be serialized
+	 * @throws BufferOverflowException
+	 *             if the buffer is too small; its position is left unchanged
+	 */
+	public static void serialize(Document doc, ByteBuffer buffer)
+			throws IOException {
+		serialize(doc, XmlOutput.forBuffer(buffer));
+	}
+
+	/**
+	 * Serialize a document UTF-8 encoded into a buffer taken from a pool
+	 *
+	 * @param doc
+	 *            document to serialize
+	 * @param pool
+	 *            pool to take the buffer from
+	 * @return flipped buffer holding the document, to be handed back with
+	 *         {@link SimuBufferPool#release(ByteBuffer)}
+	 * @throws IOException
+	 *             if the document cannot be serialized
+	 * @throws BufferOverflowException
+	 *             if the document does not fit into a pooled buffer
+	 */
+	public static ByteBuffer serialize(Document doc, SimuBufferPool pool)
+			throws IOException {
+		ByteBuffer buffer = pool.acquire();
+		boolean done = false;
+		try {
+			serialize(doc, buffer);
+			buffer.flip();
+			done = true;
+			return buffer;
+		} finally {
+			if (!done) {
+				pool.release(buffer);
+			}
+		}
+	}
+
+	static void serialize(Document doc, XmlOutput out) throws IOException {
+		out.begin();
+		Element root = doc.getDocumentElement();
+		if (root == null || root != doc.getFirstChild()
+				|| root.getNextSibling() != null || !isSimple(root)) {
+			out.write(transform(doc));
+			return;
+		}
+		writeElement(root, out, new ArrayList<String>(4));
+	}
+
+	/**
+	 * Checking whether the element tree only uses constructs the direct path
+	 * supports
+	 */
+	private static boolean isSimple(Element e) {
+		NamedNodeMap attrs = e.getAttributes();
+		for (int i = 0; i < attrs.getLength(); i++) {
+			Node a = attrs.item(i);
+			String name = a.getNodeName();
+			if (a.getNamespaceURI() != null || name.equals("xmlns")
+					|| name.startsWith("xmlns:")) {
+				return false;
+			}
+		}
+		for (Node n = e.getFirstChild(); n != null; n = n.getNextSibling()) {
+			switch (n.getNodeType()) {
+			case Node.ELEMENT_NODE:
+				if (!isSimple((Element) n)) {
+					return false;
+				}
+				break;
+			case Node.TEXT_NODE:
+				break;
+			default:
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Writing an element and its subtree
+	 *
+	 * @param scope
+	 *            prefix/URI pairs of the namespace declarations in scope
+	 */
+	private static void writeElement(Element e, XmlOutput out,
+			List<String> scope) throws IOException {
+		String name = e.getNodeName();
+		out.write('<');
+		out.write(name);
+
+		NamedNodeMap attrs = e.getAttributes();
+		for (int i = 0; i < attrs.getLength(); i++) {
+			Attr a = (Attr) attrs.item(i);
+			out.write(' ');
+			out.write(a.getNodeName());
+			out.write("=\"");
+			out.writeAttribute(a.getValue());
+			out.write('"');
+		}
+
+		int scopeSize = scope.size();
+		String prefix = e.getPrefix() == null ? "" : e.getPrefix();
+		String uri = e.getNamespaceURI() == null ? "" : e.getNamespaceURI();
+		if (!uri.equals(lookupNamespace(scope, prefix))) {
+			out.write(prefix.isEmpty() ? " xmlns" : " xmlns:");
+			out.write(prefix);
+			out.write("=\"");
+			out.writeAttribute(uri);
+			out.write('"');
+			scope.add(prefix);
+			scope.add(uri);
+		}
+
+		if (isEmpty(e)) {
+			out.write("/>");
+		} else {
+			out.write('>');
+			for (Node n = e.getFirstChild(); n != null; n = n
+					.getNextSibling()) {
+				if (n.getNodeType() == Node.ELEMENT_NODE) {
+					writeElement((Element) n, out, scope);
+				} else {
+					out.writeText(n.getNodeValue());
+				}
+			}
+			out.write("</");
+			out.write(name);
+			out.write('>');
+		}
+
+		while (scope.size() > scopeSize) {
+			scope.remove(scope.size() - 1);
+		}
+	}
+
+	private static String lookupNamespace(List<String> scope, String prefix) {
+		for (int i = scope.size() - 2; i >= 0; i -= 2) {
+			if (scope.get(i).equals(prefix)) {
+				return scope.get(i + 1);
+			}
+		}
+		return "";
+	}
+
+	private static boolean isEmpty(Element e) {
+		for (Node n = e.getFirstChild(); n != null; n = n.getNextSibling()) {
+			if (n.getNodeType() != Node.TEXT_NODE
+					|| !n.getNodeValue().isEmpty()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Fallback for documents the direct path does not support
+	 */
+	private static String transform(Document doc) throws IOException {
+		Transformer transformer;
+		TRANSFORMER_LOCK.lock();
+		try {
+			transformer = TRANSFORMER_FACTORY.newTransformer();
+		} catch (TransformerException e) {
+			throw new IOException(e);
+		} finally {
+			TRANSFORMER_LOCK.unlock();
+		}
+		transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+		StringWriter writer = new StringWriter();
+		try {
+			transformer.transform(new DOMSource(doc), new StreamResult(writer));
+		} catch (TransformerException e) {
+			throw new IOException(e);
+		}
+		StringBuffer sb = writer.getBuffer();
+		int j = 0;
+		for (int i = 0; i < sb.length(); i++) {
+			char c = sb.charAt(i);
+			if (c != '\n' && c != '\r') {
+				sb.setCharAt(j++, c);
+			}
+		}
+		sb.setLength(j);
+		return sb.toString();
+	}
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.simumetadata;
+
+/**
+ * Character classes of the direct serialization path. A scan walks a value
+ * once with a table lookup per character below U+00A0 and a single range
+ * check above, so values without markup characters are copied to the output
+ * in one piece.
+ *
+ * @author DECOIT GmbH
+ *
+ */
+final class XmlChars {
+
+	/**
+	 * Bit set in the tables for characters {@link XmlOutput} must not copy as
+	 * is in text content
+	 */
+	private static final byte TEXT = 1;
+
+	/**
+	 * Bit set for characters that must not be copied as is in attribute values
+	 */
+	private static final byte ATTRIBUTE = 2;
+
+	/**
+	 * Bit set for characters not allowed in XML 1.0 documents
+	 */
+	private static final byte ILLEGAL = 4;
+
+	/**
+	 * Classes of the characters below U+00A0
+	 */
+	private static final byte[] CLASSES = new byte[0xA0];
+
+	static {
+		for (char c = 0; c < 0x20; c++) {
+			CLASSES[c] = TEXT | ATTRIBUTE | ILLEGAL;
+		}
+		CLASSES['\t'] = ATTRIBUTE;
+		CLASSES['\n'] = TEXT | ATTRIBUTE;
+		CLASSES['\r'] = TEXT | ATTRIBUTE;
+		// the Transformer writes DEL and C1 controls as is in attributes
+		for (char c = 0x7F; c < 0xA0; c++) {
+			CLASSES[c] = TEXT;
+		}
+		CLASSES['&'] = TEXT | ATTRIBUTE;
+		CLASSES['<'] = TEXT | ATTRIBUTE;
+		CLASSES['>'] = TEXT | ATTRIBUTE;
+		CLASSES['"'] = ATTRIBUTE;
+	}
+
+	private XmlChars() {
+	}
+
+	/**
+	 * @param s
+	 *            text content
+	 * @return index of the first character to escape or drop, -1 if s can be
+	 *         written as is
+	 */
+	static int scanText(String s) {
+		return scan(s, TEXT);
+	}
+
+	/**
+	 * @param s
+	 *            attribute value
+	 * @return index of the first character to escape, -1 if s can be written
+	 *         as is
+	 */
+	static int scanAttribute(String s) {
+		return scan(s, ATTRIBUTE);
+	}
+
+	private static int scan(String s, byte mask) {
+		int len = s.length();
+		for (int i = 0; i < len; i++) {
+			char c = s.charAt(i);
+			if (c < 0xA0 ? (CLASSES[c] & mask) != 0 : c >= Character.MIN_SURROGATE
+					&& c <= Character.MAX_SURROGATE) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Looking for a character that cannot be represented in an XML 1.0
+	 * document, not even as a character reference: control characters other
+	 * than tab, line feed and carriage return, U+FFFE, U+FFFF and unpaired
+	 * surrogates
+	 *
+	 * @param s
+	 *            value to check
+	 * @return index of the first illegal character, -1 if there is none
+	 */
+	static int indexOfIllegal(String s) {
+		int len = s.length();
+		for (int i = 0; i < len; i++) {
+			char c = s.charAt(i);
+			if (c < 0xA0) {
+				if ((CLASSES[c] & ILLEGAL) != 0) {
+					return i;
+				}
+			} else if (c >= Character.MIN_SURROGATE) {
+				if (c >= 0xFFFE) {
+					return i;
+				}
+				if (c <= Character.MAX_SURROGATE) {
+					if (!Character.isHighSurrogate(c) || i + 1 == len
+							|| !Character.isLowSurrogate(s.charAt(i + 1))) {
+						return i;
+					}
+					i++;
+				}
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Rejecting a value that cannot be serialized into a well-formed document
+	 *
+	 * @param element
+	 *            element the value belongs to
+	 * @param field
+	 *            index of the field holding the value
+	 * @param value
+	 *            value to check
+	 * @throws IllegalArgumentException
+	 *             if the value contains an illegal character
+	 */
+	static void checkLegal(SimuElement element, int field, String value) {
+		int i = indexOfIllegal(value);
+		if (i >= 0) {
+			throw new IllegalArgumentException(describeIllegal(element, field,
+					value, i));
+		}
+	}
+
+	/**
+	 * @param element
+	 *            element the value belongs to
+	 * @param field
+	 *            index of the field holding the value
+	 * @param value
+	 *            rejected value
+	 * @param index
+	 *            index of the illegal character, see
+	 *            {@link #indexOfIllegal(String)}
+	 * @return message for the exception rejecting the value
+	 */
+	static String describeIllegal(SimuElement element, int field,
+			String value, int index) {
+		return String.format(
+				"illegal XML character U+%04X at index %d of %s in %s",
+				(int) value.charAt(index), index, element.getFieldName(field),
+				element.getName());
+	}
+}
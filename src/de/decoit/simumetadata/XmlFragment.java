@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.simumetadata;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Immutable piece of serialized XML in char and UTF-8 form, written as is by
+ * {@link XmlOutput#write(XmlFragment)}
+ *
+ * @author DECOIT GmbH
+ *
+ */
+final class XmlFragment {
+
+	static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final String mXml;
+	private final byte[] mUtf8;
+
+	/**
+	 * Constructor
+	 *
+	 * @param xml
+	 *            serialized XML, must not need any escaping
+	 */
+	XmlFragment(String xml) {
+		mXml = xml;
+		mUtf8 = xml.getBytes(UTF8);
+	}
+
+	/**
+	 * @return UTF-8 form, must not be modified
+	 */
+	byte[] utf8() {
+		return mUtf8;
+	}
+
+	/**
+	 * @return read-only view of the UTF-8 form, positioned at 0
+	 */
+	ByteBuffer asByteBuffer() {
+		return ByteBuffer.wrap(mUtf8).asReadOnlyBuffer();
+	}
+
+	@Override
+	public String toString() {
+		return mXml;
+	}
+}
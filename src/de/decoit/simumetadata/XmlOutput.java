@@ -0,0 +1,405 @@
+/*
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.simumetadata;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Character sink used by the direct serialization path. Escaping follows the
+ * rules of the JDK identity Transformer combined with the newline removal done
+ * by {@link SimuMetadataFactoryImpl#getXMLString(org.w3c.dom.Document)}, so
+ * both paths produce identical output for all values without unpaired
+ * surrogates.
+ *
+ * Unpaired surrogates are rejected with an {@link IOException}. The Transformer
+ * fails on most of them as well, but drops a high surrogate ending a value and
+ * writes a lone low surrogate as a character reference no parser accepts. This
+ * path does not reproduce either, it would lose data or write malformed XML.
+ *
+ * @author DECOIT GmbH
+ *
+ */
+abstract class XmlOutput {
+
+	/**
+	 * Write a single BMP character that is not a surrogate
+	 *
+	 * @param c
+	 *            character to write
+	 * @throws IOException
+	 */
+	abstract void write(char c) throws IOException;
+
+	/**
+	 * Write markup that needs no escaping
+	 *
+	 * @param s
+	 *            markup to write
+	 * @throws IOException
+	 */
+	void write(String s) throws IOException {
+		write(s, 0, s.length());
+	}
+
+	/**
+	 * Write a range of markup that needs no escaping
+	 *
+	 * @param s
+	 *            markup to write
+	 * @param start
+	 *            index of the first character
+	 * @param end
+	 *            index after the last character
+	 * @throws IOException
+	 */
+	void write(String s, int start, int end) throws IOException {
+		for (int i = start; i < end; i++) {
+			write(s.charAt(i));
+		}
+	}
+
+	/**
+	 * Write pre-serialized markup in the form matching the target
+	 *
+	 * @param fragment
+	 *            markup to write
+	 * @throws IOException
+	 */
+	void write(XmlFragment fragment) throws IOException {
+		write(fragment.toString());
+	}
+
+	/**
+	 * Mark the start of a document. Outputs that cannot take back partial
+	 * output ignore this.
+	 */
+	void begin() {
+	}
+
+	/**
+	 * Push buffered content to the underlying target
+	 *
+	 * @throws IOException
+	 */
+	void flush() throws IOException {
+	}
+
+	/**
+	 * Write escaped character data. Line feeds are dropped.
+	 *
+	 * @param s
+	 *            text content
+	 * @throws IOException
+	 *             if s contains an unpaired surrogate
+	 */
+	void writeText(String s) throws IOException {
+		int first = XmlChars.scanText(s);
+		if (first < 0) {
+			write(s);
+			return;
+		}
+		write(s, 0, first);
+		int len = s.length();
+		for (int i = first; i < len; i++) {
+			char c = s.charAt(i);
+			switch (c) {
+			case '&':
+				write("&amp;");
+				break;
+			case '<':
+				write("&lt;");
+				break;
+			case '>':
+				write("&gt;");
+				break;
+			case '\n':
+				break;
+			case '\t':
+				write(c);
+				break;
+			default:
+				i = writeOther(s, i, c);
+			}
+		}
+	}
+
+	/**
+	 * Write an escaped attribute value without the surrounding quotes. Unlike
+	 * in text content, DEL and the C1 controls are written as is.
+	 *
+	 * @param s
+	 *            attribute value
+	 * @throws IOException
+	 *             if s contains an unpaired surrogate
+	 */
+	void writeAttribute(String s) throws IOException {
+		int first = XmlChars.scanAttribute(s);
+		if (first < 0) {
+			write(s);
+			return;
+		}
+		write(s, 0, first);
+		int len = s.length();
+		for (int i = first; i < len; i++) {
+			char c = s.charAt(i);
+			switch (c) {
+			case '&':
+				write("&amp;");
+				break;
+			case '<':
+				write("&lt;");
+				break;
+			case '>':
+				write("&gt;");
+				break;
+			case '"':
+				write("&quot;");
+				break;
+			default:
+				if (c >= 0x7F && c <= 0x9F) {
+					write(c);
+				} else {
+					i = writeOther(s, i, c);
+				}
+			}
+		}
+	}
+
+	private int writeOther(String s, int i, char c) throws IOException {
+		if (c < 0x20 || (c >= 0x7F && c <= 0x9F)) {
+			writeCharRef(c);
+		} else if (Character.isHighSurrogate(c) && i + 1 < s.length()
+				&& Character.isLowSurrogate(s.charAt(i + 1))) {
+			writeCharRef(Character.toCodePoint(c, s.charAt(i + 1)));
+			return i + 1;
+		} else if (Character.isSurrogate(c)) {
+			throw new IOException("Invalid UTF-16 surrogate detected: "
+					+ Integer.toHexString(c));
+		} else {
+			write(c);
+		}
+		return i;
+	}
+
+	private void writeCharRef(int codePoint) throws IOException {
+		write("&#");
+		SimuNumbers.write(this, codePoint);
+		write(';');
+	}
+
+	/**
+	 * Create an output appending to a {@link StringBuilder}
+	 *
+	 * @param sb
+	 *            target builder
+	 * @return output
+	 */
+	static XmlOutput forStringBuilder(final StringBuilder sb) {
+		return new XmlOutput() {
+			@Override
+			void write(char c) {
+				sb.append(c);
+			}
+
+			@Override
+			void write(String s) {
+				sb.append(s);
+			}
+
+			@Override
+			void write(String s, int start, int end) {
+				sb.append(s, start, end);
+			}
+		};
+	}
+
+	/**
+	 * Create a buffered output writing to a {@link Writer}. The output must be
+	 * flushed when done.
+	 *
+	 * @param writer
+	 *            target writer
+	 * @return output
+	 */
+	static XmlOutput forWriter(Writer writer) {
+		return new WriterOutput(writer);
+	}
+
+	/**
+	 * Create a buffered output writing UTF-8 to an {@link OutputStream}. The
+	 * output must be flushed when done.
+	 *
+	 * @param out
+	 *            target stream
+	 * @return output
+	 */
+	static XmlOutput forStream(OutputStream out) {
+		return new StreamOutput(out);
+	}
+
+	/**
+	 * Create an output encoding UTF-8 into a {@link ByteBuffer}, starting at
+	 * its current position
+	 *
+	 * @param buffer
+	 *            target buffer
+	 * @return output
+	 */
+	static XmlOutput forBuffer(ByteBuffer buffer) {
+		return new BufferOutput(buffer);
+	}
+
+	private static final class WriterOutput extends XmlOutput {
+		private final Writer mWriter;
+		private final char[] mBuf = new char[512];
+		private int mPos;
+
+		WriterOutput(Writer writer) {
+			mWriter = writer;
+		}
+
+		@Override
+		void write(char c) throws IOException {
+			if (mPos == mBuf.length) {
+				flush();
+			}
+			mBuf[mPos++] = c;
+		}
+
+		@Override
+		void write(String s, int start, int end) throws IOException {
+			while (start < end) {
+				if (mPos == mBuf.length) {
+					flush();
+				}
+				int n = Math.min(end - start, mBuf.length - mPos);
+				s.getChars(start, start + n, mBuf, mPos);
+				mPos += n;
+				start += n;
+			}
+		}
+
+		@Override
+		void flush() throws IOException {
+			mWriter.write(mBuf, 0, mPos);
+			mPos = 0;
+		}
+	}
+
+	private static final class StreamOutput extends XmlOutput {
+		private final OutputStream mOut;
+		private final byte[] mBuf = new byte[512];
+		private int mPos;
+
+		StreamOutput(OutputStream out) {
+			mOut = out;
+		}
+
+		@Override
+		void write(char c) throws IOException {
+			if (mPos > mBuf.length - 3) {
+				flush();
+			}
+			if (c < 0x80) {
+				mBuf[mPos++] = (byte) c;
+			} else if (c < 0x800) {
+				mBuf[mPos++] = (byte) (0xC0 | c >> 6);
+				mBuf[mPos++] = (byte) (0x80 | c & 0x3F);
+			} else {
+				mBuf[mPos++] = (byte) (0xE0 | c >> 12);
+				mBuf[mPos++] = (byte) (0x80 | c >> 6 & 0x3F);
+				mBuf[mPos++] = (byte) (0x80 | c & 0x3F);
+			}
+		}
+
+		@Override
+		void write(XmlFragment fragment) throws IOException {
+			byte[] utf8 = fragment.utf8();
+			if (utf8.length > mBuf.length - mPos) {
+				flush();
+			}
+			if (utf8.length > mBuf.length) {
+				mOut.write(utf8);
+				return;
+			}
+			System.arraycopy(utf8, 0, mBuf, mPos, utf8.length);
+			mPos += utf8.length;
+		}
+
+		@Override
+		void flush() throws IOException {
+			mOut.write(mBuf, 0, mPos);
+			mPos = 0;
+		}
+	}
+
+	/**
+	 * Encodes directly into the target buffer, direct buffers included. If
+	 * the buffer overflows, its position is reset to the start of the current
+	 * document before the {@link BufferOverflowException} is passed on, so no
+	 * partial document is left behind.
+	 */
+	private static final class BufferOutput extends XmlOutput {
+		private final ByteBuffer mBuffer;
+		private int mMark;
+
+		BufferOutput(ByteBuffer buffer) {
+			mBuffer = buffer;
+			mMark = buffer.position();
+		}
+
+		@Override
+		void begin() {
+			mMark = mBuffer.position();
+		}
+
+		@Override
+		void write(char c) {
+			if (mBuffer.remaining() < 3) {
+				ensureRemaining(c < 0x80 ? 1 : c < 0x800 ? 2 : 3);
+			}
+			if (c < 0x80) {
+				mBuffer.put((byte) c);
+			} else if (c < 0x800) {
+				mBuffer.put((byte) (0xC0 | c >> 6));
+				mBuffer.put((byte) (0x80 | c & 0x3F));
+			} else {
+				mBuffer.put((byte) (0xE0 | c >> 12));
+				mBuffer.put((byte) (0x80 | c >> 6 & 0x3F));
+				mBuffer.put((byte) (0x80 | c & 0x3F));
+			}
+		}
+
+		@Override
+		void write(XmlFragment fragment) {
+			byte[] utf8 = fragment.utf8();
+			ensureRemaining(utf8.length);
+			mBuffer.put(utf8);
+		}
+
+		private void ensureRemaining(int len) {
+			if (mBuffer.remaining() < len) {
+				mBuffer.position(mMark);
+				throw new BufferOverflowException();
+			}
+		}
+	}
+}
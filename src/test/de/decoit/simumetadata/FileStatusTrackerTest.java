@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.simumetadata;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import javax.xml.parsers.ParserConfigurationException;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import de.hshannover.f4.trust.ifmapj.exception.MarshalException;
+import de.hshannover.f4.trust.ifmapj.identifier.Identifier;
+
+/**
+ * Tests of {@link FileStatusTracker} with a factory failing on demand
+ *
+ * @author DECOIT GmbH
+ *
+ */
+public class FileStatusTrackerTest {
+
+	private FailingFactory mFactory;
+	private FileStatusTracker mTracker;
+
+	@Before
+	public void setUp() throws ParserConfigurationException {
+		mFactory = new FailingFactory();
+		mTracker = new FileStatusTracker(mFactory, "ad");
+	}
+
+	@Test
+	public void unchangedFileIsNotReported() throws Exception {
+		assertNotNull(mTracker.update("/a", "new", "1", "low"));
+		assertNull(mTracker.update("/a", "new", "2", "low"));
+		assertNotNull(mTracker.update("/a", "modified", "3", "low"));
+		assertEquals(2, mTracker.getChangedCount());
+		assertEquals(1, mTracker.getUnchangedCount());
+	}
+
+	@Test
+	public void failedNewFileIsReportedAgain() throws Exception {
+		mFactory.mFail = true;
+		update("/a", "new");
+		assertEquals(0, mTracker.size());
+
+		mFactory.mFail = false;
+		assertNotNull(mTracker.update("/a", "new", "2", "low"));
+		assertEquals(1, mTracker.getChangedCount());
+	}
+
+	@Test
+	public void failedChangeIsReportedAgain() throws Exception {
+		assertNotNull(mTracker.update("/a", "new", "1", "low"));
+		mFactory.mFail = true;
+		update("/a", "modified");
+
+		mFactory.mFail = false;
+		assertNotNull(mTracker.update("/a", "modified", "3", "low"));
+		assertNull(mTracker.update("/a", "modified", "4", "low"));
+		assertEquals(2, mTracker.getChangedCount());
+	}
+
+	private void update(String path, String status) {
+		try {
+			mTracker.update(path, status, "1", "low");
+			fail("MarshalException expected");
+		} catch (MarshalException e) {
+			// expected
+		}
+	}
+
+	private static final class FailingFactory extends SimuMetadataFactoryImpl {
+		volatile boolean mFail;
+
+		FailingFactory() throws ParserConfigurationException {
+		}
+
+		@Override
+		public Identifier createFileIdentifier(String path, String ad)
+				throws MarshalException {
+			if (mFail) {
+				throw new MarshalException("failing on purpose");
+			}
+			return super.createFileIdentifier(path, ad);
+		}
+	}
+}
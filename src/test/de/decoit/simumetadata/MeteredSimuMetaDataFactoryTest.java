@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.simumetadata;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+/**
+ * Serialized byte counts recorded by {@link MeteredSimuMetaDataFactory}
+ *
+ * @author DECOIT GmbH
+ *
+ */
+public class MeteredSimuMetaDataFactoryTest {
+
+	@Test
+	public void serializedBytesAreUtf8Lengths() throws Exception {
+		SimuMetrics metrics = new SimuMetrics();
+		MeteredSimuMetaDataFactory factory = new MeteredSimuMetaDataFactory(
+				new SimuMetadataFactoryImpl(), metrics);
+		// e acute, euro sign and a supplementary character
+		Document doc = factory.createFileChanged("é€",
+				"😀", "high");
+		int length = factory.getXMLString(doc).getBytes("UTF-8").length;
+		assertEquals(length, metrics.getSerializedBytes());
+
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		factory.serialize(doc, stream);
+		assertEquals(length, stream.size());
+		assertEquals(2 * length, metrics.getSerializedBytes());
+
+		ByteBuffer buffer = ByteBuffer.allocate(1024);
+		buffer.position(7);
+		factory.serialize(doc, buffer);
+		assertEquals(7 + length, buffer.position());
+		assertEquals(3 * length, metrics.getSerializedBytes());
+		assertEquals(3, metrics.getCount(SimuOperation.SERIALIZE));
+	}
+}
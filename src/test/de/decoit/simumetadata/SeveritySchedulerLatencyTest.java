@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.simumetadata;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Latency behaviour of {@link SeverityScheduler}: urgent items overtake a
+ * backlog, and aging bounds how long a low severity item waits
+ *
+ * @author DECOIT GmbH
+ *
+ */
+public class SeveritySchedulerLatencyTest {
+
+	private static final int BACKLOG = 10000;
+
+	@Test
+	public void highSeverityOvertakesBacklog() {
+		SeverityScheduler<Integer> scheduler = new SeverityScheduler<Integer>(
+				BACKLOG * 2, 1, TimeUnit.HOURS);
+		for (int i = 0; i < BACKLOG; i++) {
+			assertTrue(scheduler.offer(Integer.valueOf(i), 1f));
+		}
+		// every urgent item is handed out by the next poll
+		for (int i = 0; i < 100; i++) {
+			assertTrue(scheduler.offer(Integer.valueOf(-1 - i), 9.5f));
+			assertEquals(Integer.valueOf(-1 - i), scheduler.poll());
+			assertEquals(Integer.valueOf(i), scheduler.poll());
+		}
+		// urgent items queued at once come first, each level in FIFO order
+		for (int i = 0; i < 100; i++) {
+			assertTrue(scheduler.offer(Integer.valueOf(-1 - i), 10f));
+		}
+		List<Integer> drained = new ArrayList<Integer>();
+		scheduler.drainTo(drained, Integer.MAX_VALUE);
+		assertEquals(BACKLOG, drained.size());
+		for (int i = 0; i < drained.size(); i++) {
+			assertEquals(Integer.valueOf(i < 100 ? -1 - i : i), drained.get(i));
+		}
+	}
+
+	@Test
+	public void agingPreventsStarvation() throws InterruptedException {
+		long aging = TimeUnit.MILLISECONDS.toNanos(1);
+		SeverityScheduler<Integer> scheduler = new SeverityScheduler<Integer>(
+				1 << 20, aging, TimeUnit.NANOSECONDS);
+		long start = System.nanoTime();
+		assertTrue(scheduler.offer(Integer.valueOf(-1), null));
+
+		// a steady stream of the highest severity for 50 aging intervals
+		List<Long> offered = new ArrayList<Long>();
+		while (System.nanoTime() - start < 50 * aging) {
+			long now = System.nanoTime();
+			assertTrue(scheduler.offer(Integer.valueOf(offered.size()), 10f));
+			offered.add(Long.valueOf(now));
+			if (offered.size() % 64 == 0) {
+				Thread.sleep(1);
+			}
+		}
+
+		// the low item gains one level per interval and waits at most for
+		// the items offered up to about ten intervals after it
+		Integer item;
+		while ((item = scheduler.poll()).intValue() >= 0) {
+			long delay = offered.get(item.intValue()).longValue() - start;
+			assertTrue("waited for an item offered " + delay + " ns later",
+					delay < 12 * aging);
+		}
+		int late = 0;
+		for (Long time : offered) {
+			if (time.longValue() - start >= 12 * aging) {
+				late++;
+			}
+		}
+		assertTrue(late > 0);
+		assertTrue(scheduler.size() >= late);
+	}
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.simumetadata;
+
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+
+import de.hshannover.f4.trust.ifmapj.exception.MarshalException;
+import de.hshannover.f4.trust.ifmapj.identifier.Identity;
+
+/**
+ * Stress test of a {@link SimuMetadataFactoryImpl} shared by more threads than
+ * there are document builder stripes. Every thread creates the same sequence
+ * of metadata and identifiers, starting at a different offset, and compares
+ * each serialized result with the one created single threaded beforehand.
+ *
+ * @author DECOIT GmbH
+ *
+ */
+public class SimuMetadataFactoryImplConcurrencyTest {
+
+	private static final int THREADS = 48;
+	private static final int OPERATIONS = 2000;
+
+	@Test
+	public void sharedFactory() throws Exception {
+		stress(new SimuMetadataFactoryImpl());
+	}
+
+	@Test
+	public void sharedFactoryWithCacheAndPool() throws Exception {
+		stress(new SimuMetadataFactoryImpl(new IdentifierCache(256), 64));
+	}
+
+	private void stress(final SimuMetadataFactoryImpl factory)
+			throws Exception {
+		final String[] expected = new String[OPERATIONS];
+		for (int i = 0; i < OPERATIONS; i++) {
+			expected[i] = create(factory, i);
+		}
+
+		final CountDownLatch start = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+		try {
+			List<Future<String>> results = new ArrayList<Future<String>>();
+			for (int t = 0; t < THREADS; t++) {
+				final int offset = t * OPERATIONS / THREADS;
+				results.add(executor.submit(new Callable<String>() {
+					@Override
+					public String call() throws Exception {
+						start.await();
+						for (int n = 0; n < OPERATIONS; n++) {
+							int i = (offset + n) % OPERATIONS;
+							String actual = create(factory, i);
+							if (!expected[i].equals(actual)) {
+								return "operation " + i + ": expected "
+										+ expected[i] + " but was " + actual;
+							}
+						}
+						return null;
+					}
+				}));
+			}
+			start.countDown();
+			for (Future<String> result : results) {
+				assertNull(result.get(60, TimeUnit.SECONDS));
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Creating and serializing the metadatum or identifier of operation i
+	 */
+	private static String create(SimuMetadataFactoryImpl factory, int i)
+			throws MarshalException {
+		String s = Integer.toString(i);
+		switch (i % 8) {
+		case 0:
+			return serialize(factory, factory.createAttackDetected("CVE",
+					"CVE-2014-" + s, i % 101 / 10f));
+		case 1:
+			return serialize(factory, factory.createLoginFailure(
+					CredentialType.values()[i % CredentialType.values().length],
+					LoginFailureReason.OTHER, "def" + s, "reason <" + s + ">"));
+		case 2:
+			return serialize(factory, factory.createLoginSuccess(
+					CredentialType.OTHER, "token & " + s));
+		case 3:
+			return serialize(factory, factory.createFileChanged("modified",
+					"2015-01-01T00:00:" + s, "high"));
+		case 4:
+			return serialize(factory, factory
+					.createLink(SimuLink.values()[i % SimuLink.values().length]));
+		case 5:
+			return name(factory.createVulnerability("CVE", "CVE-2014-" + s,
+					i % 101 / 10f));
+		case 6:
+			return name(factory.createService("https", "host" + s, i % 65536,
+					"example"));
+		default:
+			return name(factory.createFileIdentifier("/var/log/" + s
+					+ ".log", "example"));
+		}
+	}
+
+	private static String serialize(SimuMetadataFactoryImpl factory,
+			Document doc) {
+		String xml = factory.getXMLString(doc);
+		factory.release(doc);
+		return xml;
+	}
+
+	private static String name(Object identifier) {
+		return ((Identity) identifier).getName();
+	}
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.simumetadata;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import de.hshannover.f4.trust.ifmapj.identifier.Identifier;
+
+/**
+ * Round trip of extended identifiers through {@link SimuMetadataFactoryImpl}
+ * and {@link SimuMetadataReader#readIdentifier(Identifier)}
+ *
+ * @author DECOIT GmbH
+ *
+ */
+public class SimuMetadataReaderTest {
+
+	@Test
+	public void asciiFileIdentifier() throws Exception {
+		roundTrip(new SimuIdentifier.FileIdentifier("/home/user/a&b <c>.txt",
+				"ad \"x\" 'y'"));
+	}
+
+	@Test
+	public void nonAsciiFileIdentifier() throws Exception {
+		// /home/juergen/e-acute euro-sign.txt
+		roundTrip(new SimuIdentifier.FileIdentifier(
+				"/home/j\u00fcrgen/\u00e9\u20ac.txt", "ad"));
+	}
+
+	@Test
+	public void supplementaryAndC1Characters() throws Exception {
+		roundTrip(new SimuIdentifier.FileIdentifier(
+				"/tmp/\ud83d\ude00\u0085\u00a0\u00a1&\u00ff", "\u00e4d"));
+		roundTrip(new SimuIdentifier.Vulnerability("CVE\u2013x",
+				"\u00df-1", Float.valueOf(7.5f)));
+	}
+
+	@Test
+	public void rawLatin1IsKept() throws Exception {
+		// not valid UTF-8, so not written by ifmapj
+		assertEquals("caf\u00e9 &",
+				SimuMetadataReader.unescape("caf\u00e9 &amp;"));
+	}
+
+	private void roundTrip(SimuIdentifier expected) throws Exception {
+		Identifier identifier = expected
+				.toIdentifier(new SimuMetadataFactoryImpl());
+		assertEquals(expected, SimuMetadataReader.readIdentifier(identifier));
+	}
+}
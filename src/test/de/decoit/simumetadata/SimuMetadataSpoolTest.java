@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.simumetadata;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Tests of {@link SimuMetadataSpool} around recovery, corrupt records and a
+ * full spool
+ *
+ * @author DECOIT GmbH
+ *
+ */
+public class SimuMetadataSpoolTest {
+
+	@Rule
+	public TemporaryFolder mFolder = new TemporaryFolder();
+
+	@Test
+	public void uncommittedRecordsSurviveReopen() throws Exception {
+		File dir = mFolder.newFolder();
+		SimuMetadataSpool spool = new SimuMetadataSpool(dir, 4096, 100);
+		for (int i = 0; i < 1000; i++) {
+			assertTrue(spool.append(fileStatus("k" + i, 1)));
+		}
+		int segments = spool.getSegmentCount();
+		assertTrue(segments > 2);
+		spool.poll(300).commit();
+		// handed out, but lost with the consumer
+		assertEquals(200, spool.poll(200).getMetadata().size());
+		spool.close();
+
+		spool = new SimuMetadataSpool(dir, 4096, 100);
+		try {
+			assertEquals(700, spool.getPendingCount());
+			// segments holding only committed records are recycled
+			assertTrue(spool.getSegmentCount() < segments);
+			assertTrue(spool.append(fileStatus("new", 1)));
+
+			SimuMetadataSpool.Batch batch = spool.poll(Integer.MAX_VALUE);
+			assertEquals(701, batch.getMetadata().size());
+			for (int i = 0; i < 700; i++) {
+				assertEquals(fileStatus("k" + (300 + i), 1), batch
+						.getMetadata().get(i));
+			}
+			assertEquals(fileStatus("new", 1), batch.getMetadata().get(700));
+			batch.commit();
+			assertEquals(0, spool.getPendingCount());
+		} finally {
+			spool.close();
+		}
+
+		spool = new SimuMetadataSpool(dir, 4096, 100);
+		try {
+			assertEquals(0, spool.getPendingCount());
+			assertEquals(0, spool.getSegmentCount());
+			assertTrue(spool.poll(10).getMetadata().isEmpty());
+		} finally {
+			spool.close();
+		}
+	}
+
+	@Test
+	public void corruptRecordIsSkipped() throws Exception {
+		File dir = mFolder.newFolder();
+		SimuMetadataSpool spool = new SimuMetadataSpool(dir, 4096, 1);
+		try {
+			assertTrue(spool.append(fileStatus("a", 1)));
+			assertTrue(spool.append(fileStatus("b", 1)));
+			assertTrue(spool.append(fileStatus("c", 1)));
+			// unknown tag in the first payload, behind the 16 byte segment
+			// and 8 byte record header
+			RandomAccessFile raf = new RandomAccessFile(dir.listFiles()[0],
+					"rw");
+			try {
+				raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, 4096)
+						.put(24, (byte) 0x7F);
+			} finally {
+				raf.close();
+			}
+
+			SimuMetadataSpool.Batch batch = spool.poll(10);
+			assertEquals(Arrays.asList(fileStatus("b", 1), fileStatus("c", 1)),
+					batch.getMetadata());
+			assertEquals(1, spool.getCorruptCount());
+			batch.commit();
+			assertEquals(0, spool.getPendingCount());
+			assertTrue(spool.poll(10).getMetadata().isEmpty());
+		} finally {
+			spool.close();
+		}
+	}
+
+	@Test
+	public void fullSpoolKeepsFillingLastSegment() throws IOException {
+		SimuMetadataSpool spool = new SimuMetadataSpool(mFolder.newFolder(),
+				4096, 1);
+		try {
+			int appended = 0;
+			while (spool.append(fileStatus("large", 500))) {
+				appended++;
+			}
+			assertTrue(spool.append(fileStatus("small", 1)));
+			assertEquals(appended + 1, spool.getPendingCount());
+			assertEquals(1, spool.getSegmentCount());
+
+			// once everything is committed, the segment makes room again
+			SimuMetadataSpool.Batch batch = spool.poll(Integer.MAX_VALUE);
+			assertEquals(appended + 1, batch.getMetadata().size());
+			batch.commit();
+			assertTrue(spool.append(fileStatus("large", 500)));
+			assertFalse(spool.poll(10).getMetadata().isEmpty());
+		} finally {
+			spool.close();
+		}
+	}
+
+	private static SimuMetadata fileStatus(String kind, int length) {
+		char[] time = new char[length];
+		Arrays.fill(time, '1');
+		return new SimuMetadata.FileStatus(kind, new String(time), "high");
+	}
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.simumetadata;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * Mapping of {@link SimuLink} constants to {@link SimuOperation}s
+ *
+ * @author DECOIT GmbH
+ *
+ */
+public class SimuOperationTest {
+
+	@Test
+	public void everyLinkHasItsOperation() {
+		for (SimuLink link : SimuLink.values()) {
+			assertEquals(link.name(), SimuOperation.forLink(link).name());
+		}
+	}
+}
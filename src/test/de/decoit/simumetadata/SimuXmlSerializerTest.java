@@ -0,0 +1,141 @@
+/*
+ * Copyright (C) 2015 DECOIT GmbH
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.decoit.simumetadata;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Differential test of {@link SimuXmlSerializer} against the JDK identity
+ * Transformer with the line feed removal getXMLString() always applied, on
+ * documents built by the caller
+ *
+ * @author DECOIT GmbH
+ *
+ */
+public class SimuXmlSerializerTest {
+
+	private static final int DOCUMENTS = 20000;
+
+	private final DocumentBuilder mBuilder;
+
+	public SimuXmlSerializerTest() throws Exception {
+		mBuilder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+	}
+
+	@Test
+	public void controlCharactersInAttributes() throws Exception {
+		StringBuilder all = new StringBuilder();
+		for (char c = 1; c < 0xA1; c++) {
+			all.append(c);
+		}
+		assertSame(document("\u007f'", "\u007f'"));
+		assertSame(document(all.toString(), all.toString()));
+	}
+
+	@Test
+	public void randomDocuments() throws Exception {
+		Random random = new Random(42);
+		for (int i = 0; i < DOCUMENTS; i++) {
+			assertSame(document(randomValue(random), randomValue(random)));
+		}
+	}
+
+	private Document document(String attribute, String text) {
+		Document doc = mBuilder.newDocument();
+		Element root = doc.createElementNS("http://example.org/ns", "p:root");
+		root.setAttribute("a", attribute);
+		Element child = doc.createElementNS("http://example.org/ns", "p:child");
+		child.setAttribute("b", text);
+		child.appendChild(doc.createTextNode(text));
+		root.appendChild(child);
+		doc.appendChild(root);
+		return doc;
+	}
+
+	private static void assertSame(Document doc) throws Exception {
+		String expected = transform(doc);
+		assertEquals(expected, SimuXmlSerializer.toXmlString(doc));
+
+		StringWriter writer = new StringWriter();
+		SimuXmlSerializer.serialize(doc, writer);
+		assertEquals(expected, writer.toString());
+
+		byte[] utf8 = expected.getBytes("UTF-8");
+		ByteArrayOutputStream stream = new ByteArrayOutputStream();
+		SimuXmlSerializer.serialize(doc, stream);
+		assertArrayEquals(utf8, stream.toByteArray());
+
+		ByteBuffer buffer = ByteBuffer.allocate(utf8.length + 16);
+		SimuXmlSerializer.serialize(doc, buffer);
+		assertArrayEquals(utf8, Arrays.copyOf(buffer.array(),
+				buffer.position()));
+	}
+
+	private static String transform(Document doc) throws Exception {
+		Transformer transformer = TransformerFactory.newInstance()
+				.newTransformer();
+		transformer.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, "yes");
+		StringWriter writer = new StringWriter();
+		transformer.transform(new DOMSource(doc), new StreamResult(writer));
+		return writer.toString().replaceAll("\n|\r", "");
+	}
+
+	/**
+	 * @return value mixing markup, control and non-ASCII characters, without
+	 *         unpaired surrogates
+	 */
+	private static String randomValue(Random random) {
+		StringBuilder sb = new StringBuilder();
+		int length = random.nextInt(12);
+		for (int i = 0; i < length; i++) {
+			int kind = random.nextInt(10);
+			if (kind < 4) {
+				sb.append((char) ('a' + random.nextInt(26)));
+			} else if (kind < 6) {
+				sb.append("<>&\"'\n\r\t]".charAt(random.nextInt(9)));
+			} else if (kind < 7) {
+				sb.append((char) (1 + random.nextInt(0x1F)));
+			} else if (kind < 8) {
+				sb.append((char) (0x7F + random.nextInt(0x30)));
+			} else if (kind < 9) {
+				sb.appendCodePoint(0x10000 + random.nextInt(0x10000));
+			} else {
+				sb.append((char) (0x100 + random.nextInt(0xD000)));
+			}
+		}
+		return sb.toString();
+	}
+}